@@ -0,0 +1,196 @@
+import java.util.Arrays;
+
+public class AdjacencyCache {
+    private static final int MAX_REFERENCE = 3;
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final long budgetBytes;
+    private final int minDegree;
+    private final boolean packed;
+
+    // Slot of every cached vertex, -1 when it is not cached, and the misses seen per vertex so far
+    private final int[] slotOf;
+    private final byte[] misses;
+
+    // Cached lists by slot, either plain or gap-encoded as varints; the credit is the decode work the entry saves
+    private int[] slotVertex = new int[16];
+    private int[] slotDegree = new int[16];
+    private long[] slotCredit = new long[16];
+    private long[] slotBytes = new long[16];
+    private int[][] slotSuccessors = new int[16][];
+    private byte[][] slotPacked = new byte[16][];
+    private int size = 0;
+
+    private int hand = 0;
+    private long usedBytes = 0;
+    private int[] unpackBuffer = new int[16];
+
+    private long requests = 0;
+    private long hits = 0;
+    private long refused = 0;
+    private long bytesSaved = 0;
+
+    public AdjacencyCache(int numNodes, long budgetBytes, int minDegree, boolean packed) {
+        this.budgetBytes = budgetBytes;
+        this.minDegree = minDegree;
+        this.packed = packed;
+        this.slotOf = new int[numNodes];
+        this.misses = new byte[numNodes];
+        Arrays.fill(slotOf, -1);
+    }
+
+    // Whether a vertex of this degree goes through the cache at all
+    public boolean isCandidate(int degree) {
+        return degree >= minDegree;
+    }
+
+    // Return the cached successors of a vertex, or null on a miss; only the first degree entries are valid
+    public int[] get(int vertex) {
+        requests++;
+        int slot = slotOf[vertex];
+        if (slot < 0) {
+            if (misses[vertex] < MAX_REFERENCE) {
+                misses[vertex]++;
+            }
+            return null;
+        }
+
+        hits++;
+        int degree = slotDegree[slot];
+        bytesSaved += 4L * degree;
+        slotCredit[slot] = Math.min(slotCredit[slot] + degree, (long) MAX_REFERENCE * degree);
+        return slotSuccessors[slot] != null ? slotSuccessors[slot] : unpack(slotPacked[slot], degree);
+    }
+
+    // Offer a freshly decoded list. It is worth its degree times the misses it has seen, and it only displaces
+    // entries whose remaining credit adds up to no more than that, so one-off visits do not churn the cache
+    public void offer(int vertex, int degree, int[] successors) {
+        byte[] packedList = packed ? pack(degree, successors) : null;
+        long bytes = packed ? packedList.length : 4L * degree;
+
+        // A single list may not take more than a quarter of the budget
+        if (bytes > budgetBytes / 4) {
+            return;
+        }
+
+        long value = (long) degree * misses[vertex];
+        long displaced = 0;
+        while (usedBytes + bytes > budgetBytes) {
+            int victim = nextVictim();
+            displaced += slotCredit[victim];
+            if (displaced > value) {
+                refused++;
+                return;
+            }
+            remove(victim);
+        }
+
+        add(vertex, degree, packed ? null : Arrays.copyOf(successors, degree), packedList, bytes, value);
+    }
+
+    // Helper method to pick the cheapest entry among the next few under the CLOCK hand, halving the credit of
+    // every entry the hand passes so that lists which stopped being used eventually make room
+    private int nextVictim() {
+        int victim = -1;
+        for (int i = 0; i < EVICTION_SAMPLE && i < size; i++) {
+            if (hand >= size) {
+                hand = 0;
+            }
+            if (victim < 0 || slotCredit[hand] < slotCredit[victim]) {
+                victim = hand;
+            }
+            slotCredit[hand] >>= 1;
+            hand++;
+        }
+        return victim;
+    }
+
+    // Helper method to append an entry in a new slot, growing the slot arrays when they are full
+    private void add(int vertex, int degree, int[] successors, byte[] packedList, long bytes, long credit) {
+        if (size == slotVertex.length) {
+            int capacity = 2 * size;
+            slotVertex = Arrays.copyOf(slotVertex, capacity);
+            slotDegree = Arrays.copyOf(slotDegree, capacity);
+            slotCredit = Arrays.copyOf(slotCredit, capacity);
+            slotBytes = Arrays.copyOf(slotBytes, capacity);
+            slotSuccessors = Arrays.copyOf(slotSuccessors, capacity);
+            slotPacked = Arrays.copyOf(slotPacked, capacity);
+        }
+
+        slotVertex[size] = vertex;
+        slotDegree[size] = degree;
+        slotCredit[size] = credit;
+        slotBytes[size] = bytes;
+        slotSuccessors[size] = successors;
+        slotPacked[size] = packedList;
+        slotOf[vertex] = size;
+        size++;
+        usedBytes += bytes;
+    }
+
+    // Helper method to drop an entry by moving the last slot into its place
+    private void remove(int slot) {
+        slotOf[slotVertex[slot]] = -1;
+        usedBytes -= slotBytes[slot];
+
+        int last = --size;
+        if (slot != last) {
+            slotVertex[slot] = slotVertex[last];
+            slotDegree[slot] = slotDegree[last];
+            slotCredit[slot] = slotCredit[last];
+            slotBytes[slot] = slotBytes[last];
+            slotSuccessors[slot] = slotSuccessors[last];
+            slotPacked[slot] = slotPacked[last];
+            slotOf[slotVertex[slot]] = slot;
+        }
+        slotSuccessors[last] = null;
+        slotPacked[last] = null;
+    }
+
+    // Helper method to gap-encode a sorted successor list as varints
+    private static byte[] pack(int degree, int[] successors) {
+        byte[] out = new byte[5 * degree];
+        int length = 0;
+        int previous = 0;
+
+        for (int i = 0; i < degree; i++) {
+            int gap = successors[i] - previous;
+            previous = successors[i];
+            while ((gap & ~0x7F) != 0) {
+                out[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            out[length++] = (byte) gap;
+        }
+
+        return Arrays.copyOf(out, length);
+    }
+
+    private int[] unpack(byte[] in, int degree) {
+        if (unpackBuffer.length < degree) {
+            unpackBuffer = new int[degree];
+        }
+
+        int position = 0;
+        int previous = 0;
+        for (int i = 0; i < degree; i++) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in[position++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += gap;
+            unpackBuffer[i] = previous;
+        }
+        return unpackBuffer;
+    }
+
+    public void printStatistics() {
+        System.out.println(String.format("Cache Requests\tHit Ratio\tBytes Saved\tBytes Used\tEntries\tRefused\n%d\t%.4f\t%d\t%d\t%d\t%d",
+                requests, requests > 0 ? (double) hits / requests : 0.0, bytesSaved, usedBytes, size, refused));
+    }
+
+}
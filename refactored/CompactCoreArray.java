@@ -0,0 +1,163 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class CompactCoreArray {
+    // Byte value marking a vertex whose value lives in the overflow table
+    static final int ESCAPE = 0xFF;
+    private static final int EMPTY = -1;
+
+    private final byte[] primary;
+
+    // Open-addressing table with linear probing for the few values >= ESCAPE
+    private int[] overflowKeys;
+    private int[] overflowValues;
+    private int overflowSize;
+    private int mask;
+
+    public CompactCoreArray(int size) {
+        primary = new byte[size];
+        allocateOverflow(16);
+    }
+
+    public int length() {
+        return primary.length;
+    }
+
+    public int get(int index) {
+        int value = primary[index] & 0xFF;
+        return value != ESCAPE ? value : overflowGet(index);
+    }
+
+    public void set(int index, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value + " for index " + index);
+        }
+        boolean inOverflow = (primary[index] & 0xFF) == ESCAPE;
+
+        if (value < ESCAPE) {
+            if (inOverflow) {
+                overflowRemove(index);
+            }
+            primary[index] = (byte) value;
+        } else {
+            primary[index] = (byte) ESCAPE;
+            overflowPut(index, value);
+        }
+    }
+
+    // Decrement a value and return the new one; the common case never touches the overflow table
+    public int decrement(int index) {
+        int value = primary[index] & 0xFF;
+        if (value == 0) {
+            // 0 - 1 would be stored as ESCAPE and read back from an overflow entry that does not exist
+            throw new IllegalStateException("Cannot decrement the value 0 at index " + index);
+        }
+        if (value != ESCAPE) {
+            primary[index] = (byte) (value - 1);
+            return value - 1;
+        }
+
+        int decremented = overflowGet(index) - 1;
+        set(index, decremented);
+        return decremented;
+    }
+
+    // Bulk-load values that are all known to be below ESCAPE, e.g. degrees from a GraphStatistics sidecar
+    public void setSmallValues(int from, ByteBuffer source, int length) {
+        source.get(primary, from, length);
+    }
+
+    public int max() {
+        int max = 0;
+        for (int i = 0; i < primary.length; i++) {
+            int value = primary[i] & 0xFF;
+            if (value != ESCAPE && value > max) {
+                max = value;
+            }
+        }
+        for (int slot = 0; slot < overflowKeys.length; slot++) {
+            if (overflowKeys[slot] != EMPTY && overflowValues[slot] > max) {
+                max = overflowValues[slot];
+            }
+        }
+        return max;
+    }
+
+    // Helper method to allocate an empty overflow table of the given power-of-two capacity
+    private void allocateOverflow(int capacity) {
+        overflowKeys = new int[capacity];
+        overflowValues = new int[capacity];
+        Arrays.fill(overflowKeys, EMPTY);
+        mask = capacity - 1;
+        overflowSize = 0;
+    }
+
+    private int slotOf(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int overflowGet(int key) {
+        for (int slot = slotOf(key);; slot = (slot + 1) & mask) {
+            if (overflowKeys[slot] == key) {
+                return overflowValues[slot];
+            }
+            if (overflowKeys[slot] == EMPTY) {
+                throw new IllegalStateException("Missing overflow value for index " + key);
+            }
+        }
+    }
+
+    private void overflowPut(int key, int value) {
+        int slot = slotOf(key);
+        while (overflowKeys[slot] != EMPTY && overflowKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (overflowKeys[slot] == EMPTY) {
+            overflowKeys[slot] = key;
+            overflowSize++;
+        }
+        overflowValues[slot] = value;
+
+        if (overflowSize * 2 > overflowKeys.length) {
+            rehash(overflowKeys.length * 2);
+        }
+    }
+
+    private void overflowRemove(int key) {
+        int slot = slotOf(key);
+        while (overflowKeys[slot] != key) {
+            if (overflowKeys[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // Backward-shift deletion keeps probe sequences intact without tombstones
+        int hole = slot;
+        for (int next = (hole + 1) & mask; overflowKeys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slotOf(overflowKeys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                overflowKeys[hole] = overflowKeys[next];
+                overflowValues[hole] = overflowValues[next];
+                hole = next;
+            }
+        }
+        overflowKeys[hole] = EMPTY;
+        overflowSize--;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = overflowKeys;
+        int[] oldValues = overflowValues;
+        allocateOverflow(capacity);
+
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                overflowPut(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+}
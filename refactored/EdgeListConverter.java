@@ -0,0 +1,438 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.unimi.dsi.webgraph.BVGraph;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class EdgeListConverter {
+    // Number of runs merged at once, which bounds the files open during a merge
+    private static final int MAX_FAN_IN = 128;
+
+    private final File edgeList;
+    private final String basename;
+    private final int numThreads;
+    private final int bufferArcs;
+    private final File spillDirectory;
+
+    private final List<File> runs = Collections.synchronizedList(new ArrayList<File>());
+    private final AtomicInteger maxNode = new AtomicInteger(-1);
+    private final AtomicLong edgesRead = new AtomicLong();
+    private final AtomicLong selfLoops = new AtomicLong();
+
+    public EdgeListConverter(String edgeList, String basename, int numThreads, int bufferArcs) {
+        this.edgeList = new File(edgeList);
+        this.basename = basename;
+        this.numThreads = numThreads;
+        this.bufferArcs = Math.max(2, bufferArcs);
+
+        // Spill next to the output, where the space for the compressed graph is needed anyway
+        File parent = new File(basename).getAbsoluteFile().getParentFile();
+        this.spillDirectory = parent != null ? parent : new File(".");
+    }
+
+    // Parse, symmetrize, sort, deduplicate and compress the edge list into basename.graph/.offsets/.properties
+    public void convert() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            parseAndSpill(executor);
+            reduceRuns(executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        int numNodes = maxNode.get() + 1;
+        System.out.println("Compressing " + numNodes + " nodes from " + runs.size() + " sorted runs");
+        BVGraph.store(new MergedArcGraph(numNodes, new ArrayList<File>(runs)), basename);
+        deleteRuns(runs);
+
+        // Write the degree sidecar now, so the first decomposition already starts from it
+        GraphStatistics stats = GraphStatistics.loadOrBuild(basename, ImmutableGraph.loadMapped(basename));
+        if (stats != null) {
+            long arcs = 2 * (edgesRead.get() - selfLoops.get());
+            System.out.println("|V|\tarcs\tself-loops dropped\tduplicate arcs dropped");
+            System.out.println(numNodes + "\t" + stats.numArcs + "\t" + selfLoops.get() + "\t" + (arcs - stats.numArcs));
+        }
+    }
+
+    // Helper method to split the input into newline-aligned byte ranges parsed in parallel
+    private void parseAndSpill(ExecutorService executor) throws Exception {
+        long length = edgeList.length();
+        long chunk = Math.max(1, (length + numThreads - 1) / numThreads);
+
+        List<Future<?>> tasks = new ArrayList<>();
+        for (long start = 0; start < length; start += chunk) {
+            final long from = start;
+            final long to = Math.min(length, start + chunk);
+            tasks.add(executor.submit(() -> {
+                parseRange(from, to);
+                return null;
+            }));
+        }
+        waitFor(tasks);
+    }
+
+    // Helper method to parse the lines starting in [from, to), spilling sorted runs as the buffer fills
+    private void parseRange(long from, long to) throws IOException {
+        long[] buffer = new long[bufferArcs];
+        int size = 0;
+        int localMaxNode = -1;
+        long localEdges = 0;
+        long localSelfLoops = 0;
+
+        try (FileChannel channel = FileChannel.open(edgeList.toPath(), StandardOpenOption.READ)) {
+            long position = Math.max(0, from - 1);
+            channel.position(position);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+
+            // A line that straddles the range start belongs to the previous range
+            if (from > 0) {
+                int c;
+                while ((c = in.read()) != -1) {
+                    position++;
+                    if (c == '\n') {
+                        break;
+                    }
+                }
+            }
+
+            long[] fields = new long[2];
+            while (position < to) {
+                int consumed = parseLine(in, fields);
+                if (consumed == 0) {
+                    break;
+                }
+                position += consumed;
+                if (fields[0] < 0) {
+                    continue;
+                }
+
+                int u = (int) fields[0];
+                int v = (int) fields[1];
+                localEdges++;
+                if (u == v) {
+                    localSelfLoops++;
+                    continue;
+                }
+                localMaxNode = Math.max(localMaxNode, Math.max(u, v));
+
+                if (size + 2 > buffer.length) {
+                    spill(buffer, size);
+                    size = 0;
+                }
+                buffer[size++] = arc(u, v);
+                buffer[size++] = arc(v, u);
+            }
+        }
+
+        if (size > 0) {
+            spill(buffer, size);
+        }
+        maxNode.accumulateAndGet(localMaxNode, Math::max);
+        edgesRead.addAndGet(localEdges);
+        selfLoops.addAndGet(localSelfLoops);
+    }
+
+    // Helper method to read one line into fields, returning the bytes consumed; fields[0] < 0 marks no edge
+    private static int parseLine(InputStream in, long[] fields) throws IOException {
+        int consumed = 0;
+        int found = 0;
+        long value = -1;
+        boolean comment = false;
+
+        int c;
+        while ((c = in.read()) != -1) {
+            consumed++;
+            if (c == '\n') {
+                break;
+            }
+            if (comment || found == 2) {
+                continue;
+            }
+
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > Integer.MAX_VALUE - 1) {
+                    throw new IOException("Node id does not fit in an int: " + value);
+                }
+            } else {
+                if (value >= 0) {
+                    fields[found++] = value;
+                    value = -1;
+                } else if (found == 0 && (c == '#' || c == '%')) {
+                    comment = true;
+                }
+            }
+        }
+        if (value >= 0 && found < 2) {
+            fields[found++] = value;
+        }
+
+        if (found < 2) {
+            fields[0] = -1;
+        }
+        return consumed;
+    }
+
+    private static long arc(int u, int v) {
+        return ((long) u << 32) | v;
+    }
+
+    // Helper method to sort a buffer and write it as a run without duplicates
+    private void spill(long[] buffer, int size) throws IOException {
+        Arrays.sort(buffer, 0, size);
+
+        File run = File.createTempFile(new File(basename).getName() + "-arcs", ".run", spillDirectory);
+        run.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || buffer[i] != buffer[i - 1]) {
+                    out.writeLong(buffer[i]);
+                }
+            }
+        }
+        runs.add(run);
+    }
+
+    // Helper method to merge runs in parallel groups until a single merge can read all of them
+    private void reduceRuns(ExecutorService executor) throws Exception {
+        while (runs.size() > MAX_FAN_IN) {
+            List<File> current = new ArrayList<>(runs);
+            runs.clear();
+
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < current.size(); i += MAX_FAN_IN) {
+                final List<File> group = current.subList(i, Math.min(current.size(), i + MAX_FAN_IN));
+                tasks.add(executor.submit(() -> {
+                    mergeGroup(group);
+                    return null;
+                }));
+            }
+            waitFor(tasks);
+        }
+    }
+
+    private void mergeGroup(List<File> group) throws IOException {
+        File merged = File.createTempFile(new File(basename).getName() + "-arcs", ".run", spillDirectory);
+        merged.deleteOnExit();
+
+        try (ArcMerger merger = new ArcMerger(group);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(merged), 1 << 16))) {
+            while (merger.hasNext()) {
+                out.writeLong(merger.next());
+            }
+        }
+        deleteRuns(group);
+        runs.add(merged);
+    }
+
+    private static void deleteRuns(List<File> files) {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private static void waitFor(List<Future<?>> tasks) throws Exception {
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+    }
+
+    // A sorted run of arcs read back from disk
+    private static class RunReader {
+        private final DataInputStream in;
+        private long remaining;
+        long current;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            remaining = run.length() / 8;
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            current = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // K-way merge of sorted runs that drops duplicate arcs across runs
+    private static class ArcMerger implements AutoCloseable {
+        private final PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                (a, b) -> Long.compare(a.current, b.current));
+        private final List<RunReader> readers = new ArrayList<>();
+        private long last = -1;
+        private long next;
+        private boolean hasNext;
+
+        ArcMerger(List<File> runs) throws IOException {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            fetch();
+        }
+
+        private void fetch() throws IOException {
+            hasNext = false;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                long arc = reader.current;
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+                if (arc != last) {
+                    last = arc;
+                    next = arc;
+                    hasNext = true;
+                    return;
+                }
+            }
+        }
+
+        boolean hasNext() {
+            return hasNext;
+        }
+
+        long next() throws IOException {
+            if (!hasNext) {
+                throw new EOFException();
+            }
+            long arc = next;
+            fetch();
+            return arc;
+        }
+
+        public void close() throws IOException {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    // The merged runs as a graph that must be read in node order, which is how BVGraph.store walks it through the
+    // default node iterator; asking for an earlier node reopens the runs
+    private static class MergedArcGraph extends ImmutableGraph {
+        private final int numNodes;
+        private final List<File> runs;
+        private ArcMerger merger;
+        private int current = -1;
+        private int[] successors = new int[16];
+        private int outdegree;
+
+        MergedArcGraph(int numNodes, List<File> runs) {
+            this.numNodes = numNodes;
+            this.runs = runs;
+        }
+
+        public int numNodes() {
+            return numNodes;
+        }
+
+        public boolean randomAccess() {
+            return false;
+        }
+
+        public int outdegree(int x) {
+            advanceTo(x);
+            return outdegree;
+        }
+
+        public int[] successorArray(int x) {
+            advanceTo(x);
+            return successors;
+        }
+
+        public ImmutableGraph copy() {
+            return new MergedArcGraph(numNodes, runs);
+        }
+
+        // Helper method to gather the successors of node x from the merged runs
+        private void advanceTo(int x) {
+            if (x == current) {
+                return;
+            }
+            if (x < 0 || x >= numNodes) {
+                throw new IllegalArgumentException("Node " + x + " is not in [0, " + numNodes + ")");
+            }
+
+            try {
+                if (merger == null || x < current) {
+                    if (merger != null) {
+                        merger.close();
+                    }
+                    merger = new ArcMerger(runs);
+                    current = -1;
+                }
+
+                while (current < x) {
+                    current++;
+                    outdegree = 0;
+                    while (merger.hasNext() && (int) (merger.next >>> 32) == current) {
+                        if (outdegree == successors.length) {
+                            successors = Arrays.copyOf(successors, 2 * successors.length);
+                        }
+                        successors[outdegree++] = (int) merger.next();
+                    }
+                }
+
+                if (current == numNodes - 1) {
+                    merger.close();
+                    merger = null;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        if (args.length != 2) {
+            System.err.println("Usage: java -Dnum_threads=4 -Dsort_buffer_arcs=8388608 EdgeListConverter edgelist basename");
+            System.exit(1);
+        }
+
+        int numThreads = Integer.getInteger("num_threads", Runtime.getRuntime().availableProcessors());
+        int bufferArcs = Integer.getInteger("sort_buffer_arcs", 1 << 23);
+
+        System.out.println("Converting " + args[0] + " to " + args[1]);
+        new EdgeListConverter(args[0], args[1], numThreads, bufferArcs).convert();
+
+        System.out.println(args[1] + ": Time elapsed (sec) = " + (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+}
@@ -0,0 +1,260 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class GraphStatistics {
+    public static final String EXTENSION = ".degstats";
+
+    private static final int MAGIC = 0x4B434453; // "KCDS"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final long HEADER_LENGTH = 4 + 4 + 4 + 8 + 8 + 8 + 4 + 4;
+
+    final int numNodes;
+    final long numArcs;
+    final int maxDegree;
+    private final int[] histogram;
+
+    // Degrees packed with 1, 2 or 4 bytes each, mapped in segments of 1 GiB
+    private final int width;
+    private final MappedByteBuffer[] segments;
+
+    private GraphStatistics(int numNodes, long numArcs, int maxDegree, int[] histogram, int width,
+            MappedByteBuffer[] segments) {
+        this.numNodes = numNodes;
+        this.numArcs = numArcs;
+        this.maxDegree = maxDegree;
+        this.histogram = histogram;
+        this.width = width;
+        this.segments = segments;
+    }
+
+    // Map the sidecar of a graph, building it first if it is missing or stale; null if it cannot be written
+    public static GraphStatistics loadOrBuild(String basename, ImmutableGraph graph) {
+        File sidecar = new File(basename + EXTENSION);
+        try {
+            if (sidecar.exists()) {
+                GraphStatistics stats = load(basename, graph);
+                if (stats != null) {
+                    return stats;
+                }
+                System.out.println("Degree statistics in " + sidecar + " are stale, rebuilding");
+            }
+            build(basename, graph);
+            return load(basename, graph);
+        } catch (IOException e) {
+            System.err.println("Could not use degree statistics " + sidecar + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Maximum degree recorded in a sidecar without checking it against the graph, or -1 if there is none
+    static int peekMaxDegree(String basename) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(basename + EXTENSION)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return -1;
+            }
+            in.readInt();
+            in.readLong();
+            in.readLong();
+            in.readLong();
+            return in.readInt();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // Helper method to map an existing sidecar, returning null when it does not match the graph
+    private static GraphStatistics load(String basename, ImmutableGraph graph) throws IOException {
+        File sidecar = new File(basename + EXTENSION);
+        long[] fingerprint = fingerprint(basename, graph);
+
+        int numNodes;
+        long numArcs;
+        int maxDegree;
+        int width;
+        int[] histogram;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            numNodes = in.readInt();
+            numArcs = in.readLong();
+            long graphLength = in.readLong();
+            long graphLastModified = in.readLong();
+            maxDegree = in.readInt();
+            width = in.readInt();
+
+            if (numNodes != fingerprint[0] || (fingerprint[1] >= 0 && numArcs != fingerprint[1])
+                    || graphLength != fingerprint[2] || graphLastModified != fingerprint[3]) {
+                return null;
+            }
+        }
+
+        long degreesLength = (long) numNodes * width;
+        if (sidecar.length() != HEADER_LENGTH + degreesLength + 4L * (maxDegree + 1)) {
+            return null;
+        }
+
+        // The histogram follows the degrees, so the sidecar can be written in a single pass
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            long toSkip = HEADER_LENGTH + degreesLength;
+            while (toSkip > 0) {
+                toSkip -= in.skip(toSkip);
+            }
+            histogram = new int[maxDegree + 1];
+            for (int d = 0; d <= maxDegree; d++) {
+                histogram[d] = in.readInt();
+            }
+        }
+
+        return new GraphStatistics(numNodes, numArcs, maxDegree, histogram, width,
+                mapDegrees(sidecar, HEADER_LENGTH, degreesLength));
+    }
+
+    // Helper method to write degrees, histogram and totals; this is the only time the degree passes run
+    private static void build(String basename, ImmutableGraph graph) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long[] fingerprint = fingerprint(basename, graph);
+        int n = graph.numNodes();
+
+        // First pass: the histogram size and degree width depend on the maximum degree
+        int maxDegree = 0;
+        long numArcs = 0;
+        for (int v = 0; v < n; v++) {
+            int d = graph.outdegree(v);
+            maxDegree = Math.max(maxDegree, d);
+            numArcs += d;
+        }
+        int width = maxDegree < (1 << 8) ? 1 : maxDegree < (1 << 16) ? 2 : 4;
+        int[] histogram = new int[maxDegree + 1];
+
+        File sidecar = new File(basename + EXTENSION);
+        File temporary = new File(basename + EXTENSION + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+            writeHeader(out, n, numArcs, fingerprint, maxDegree, width);
+            for (int v = 0; v < n; v++) {
+                int d = graph.outdegree(v);
+                histogram[d]++;
+                writeDegree(out, d, width);
+            }
+            for (int d = 0; d <= maxDegree; d++) {
+                out.writeInt(histogram[d]);
+            }
+        }
+
+        if (sidecar.exists() && !sidecar.delete() || !temporary.renameTo(sidecar)) {
+            throw new IOException("cannot replace " + sidecar);
+        }
+        System.out.println("Built " + sidecar + " in " + (System.currentTimeMillis() - startTime) / 1000.0 + " sec");
+    }
+
+    private static void writeHeader(DataOutputStream out, int n, long numArcs, long[] fingerprint, int maxDegree,
+            int width) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(n);
+        out.writeLong(numArcs);
+        out.writeLong(fingerprint[2]);
+        out.writeLong(fingerprint[3]);
+        out.writeInt(maxDegree);
+        out.writeInt(width);
+    }
+
+    private static void writeDegree(DataOutputStream out, int degree, int width) throws IOException {
+        switch (width) {
+        case 1:
+            out.writeByte(degree);
+            break;
+        case 2:
+            out.writeShort(degree);
+            break;
+        default:
+            out.writeInt(degree);
+        }
+    }
+
+    // Helper method to collect the values a sidecar must agree on: nodes, arcs, graph file length and date
+    private static long[] fingerprint(String basename, ImmutableGraph graph) throws IOException {
+        long arcs = -1;
+        File propertiesFile = new File(basename + ImmutableGraph.PROPERTIES_EXTENSION);
+        if (propertiesFile.exists()) {
+            Properties properties = new Properties();
+            try (FileInputStream in = new FileInputStream(propertiesFile)) {
+                properties.load(in);
+            }
+            String value = properties.getProperty("arcs");
+            if (value != null) {
+                arcs = Long.parseLong(value.trim());
+            }
+        }
+
+        File graphFile = new File(basename + ".graph");
+        return new long[] { graph.numNodes(), arcs, graphFile.length(), graphFile.lastModified() };
+    }
+
+    private static MappedByteBuffer[] mapDegrees(File sidecar, long offset, long length) throws IOException {
+        int numSegments = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+
+        try (RandomAccessFile raf = new RandomAccessFile(sidecar, "r"); FileChannel channel = raf.getChannel()) {
+            for (int s = 0; s < numSegments; s++) {
+                long start = (long) s << SEGMENT_SHIFT;
+                long size = Math.min(1L << SEGMENT_SHIFT, length - start);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, size);
+            }
+        }
+        return segments;
+    }
+
+    public int degree(int v) {
+        long position = (long) v * width;
+        MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+        int offset = (int) (position & SEGMENT_MASK);
+
+        switch (width) {
+        case 1:
+            return segment.get(offset) & 0xFF;
+        case 2:
+            return segment.getShort(offset) & 0xFFFF;
+        default:
+            return segment.getInt(offset);
+        }
+    }
+
+    // Number of vertices of each degree, indexed by degree
+    public int[] histogram() {
+        return histogram;
+    }
+
+    // Copy all degrees into a core array, in bulk when they are stored one byte each
+    public void copyDegreesInto(CompactCoreArray target) {
+        if (width == 1 && maxDegree < CompactCoreArray.ESCAPE) {
+            int v = 0;
+            for (MappedByteBuffer segment : segments) {
+                int length = segment.capacity();
+                target.setSmallValues(v, segment.duplicate(), length);
+                v += length;
+            }
+            return;
+        }
+
+        for (int v = 0; v < numNodes; v++) {
+            target.set(v, degree(v));
+        }
+    }
+
+}
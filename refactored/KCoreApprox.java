@@ -0,0 +1,202 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class KCoreApprox {
+    // Two-sided 95% normal quantile used for the per-vertex bounds
+    private static final double Z = 1.96;
+
+    ImmutableGraph G;
+    int n;
+    double rate;
+    long seed;
+
+    CompactCoreArray degree; // degrees in the full graph, the hard upper bound on every core
+    SampledGraph sample;
+
+    public KCoreApprox(ImmutableGraph G, double rate, long seed) {
+        if (rate <= 0 || rate > 1) {
+            throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + rate);
+        }
+        this.G = G;
+        this.n = G.numNodes();
+        this.rate = rate;
+        this.seed = seed;
+    }
+
+    // Read the graph once, in node order, keeping each undirected edge with probability rate
+    public void sample() {
+        degree = new CompactCoreArray(n);
+        long[] offsets = new long[n + 1];
+        int[] arcs = new int[16];
+        long size = 0;
+
+        for (int v = 0; v < n; v++) {
+            int d = G.outdegree(v);
+            degree.set(v, d);
+
+            int[] successors = G.successorArray(v);
+            for (int j = 0; j < d; j++) {
+                int u = successors[j];
+                if (u == v || !keep(v, u)) {
+                    continue;
+                }
+                if (size == arcs.length) {
+                    if (arcs.length == Integer.MAX_VALUE - 8) {
+                        throw new IllegalStateException("Sample does not fit in memory, lower the sample rate");
+                    }
+                    arcs = Arrays.copyOf(arcs, (int) Math.min(Integer.MAX_VALUE - 8, 2L * arcs.length));
+                }
+                arcs[(int) size++] = u;
+            }
+            offsets[v + 1] = size;
+        }
+
+        sample = new SampledGraph(offsets, Arrays.copyOf(arcs, (int) size));
+    }
+
+    // Helper method to decide an edge from both endpoints alike, so the sample stays symmetric
+    private boolean keep(int v, int u) {
+        long key = ((long) Math.min(u, v) << 32) | Math.max(u, v);
+        long z = seed + key * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53 < rate;
+    }
+
+    // Run an exact engine on the sample; the result is the core of each vertex in the sampled graph
+    public CompactCoreArray computeSampledCores(String engine) {
+        switch (engine) {
+        case "bz":
+            return new KCoreWG_BZ(sample).KCoreCompute();
+        case "m":
+            return new KCoreWG_M(sample).computeKCoreAsync();
+        default:
+            throw new IllegalArgumentException("Unknown engine '" + engine + "', expected bz or m");
+        }
+    }
+
+    // Scale a sampled core back up: a vertex in the true k-core keeps about Bin(k, rate) of those neighbours
+    public int estimate(int v, int sampledCore) {
+        return (int) Math.min(degree.get(v), Math.round(sampledCore / rate));
+    }
+
+    // Smallest k whose thinned core could still reach the observed one, from the normal approximation
+    public int lowerBound(int sampledCore) {
+        double b = Z * Math.sqrt(rate * (1 - rate));
+        double s = (-b + Math.sqrt(b * b + 4 * rate * sampledCore)) / (2 * rate);
+
+        // The sample is a subgraph, so its cores never exceed the true ones
+        return (int) Math.max(sampledCore, Math.floor(s * s));
+    }
+
+    // Largest k whose thinned core could still drop to the observed one
+    private long unboundedUpperBound(int sampledCore) {
+        double b = Z * Math.sqrt(rate * (1 - rate));
+        double s = (b + Math.sqrt(b * b + 4 * rate * sampledCore)) / (2 * rate);
+        return (long) Math.ceil(s * s);
+    }
+
+    public int upperBound(int v, int sampledCore) {
+        return (int) Math.min(degree.get(v), unboundedUpperBound(sampledCore));
+    }
+
+    // Write v:estimate:low:high per vertex and print the same bounds per sampled core level
+    public void store(String basename, CompactCoreArray sampledCores) throws IOException {
+        int maxSampledCore = sampledCores.max();
+        int[] levelCount = new int[maxSampledCore + 1];
+
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(basename + ".approx.cores"))) {
+            for (int v = 0; v < n; v++) {
+                int c = sampledCores.get(v);
+                levelCount[c]++;
+                bw.write(v + ":" + estimate(v, c) + ":" + Math.min(lowerBound(c), degree.get(v)) + ":"
+                        + upperBound(v, c) + "\n");
+            }
+        }
+
+        System.out.println("sampled k\tvertices\testimated k\tlow\thigh");
+        for (int c = 0; c <= maxSampledCore; c++) {
+            if (levelCount[c] > 0) {
+                System.out.println(c + "\t" + levelCount[c] + "\t" + Math.round(c / rate) + "\t" + lowerBound(c)
+                        + "\t" + unboundedUpperBound(c));
+            }
+        }
+    }
+
+    // In-memory sampled graph in compressed sparse row form
+    static class SampledGraph extends ImmutableGraph {
+        private final long[] offsets;
+        private final int[] arcs;
+        // Reused by successorArray, which the ImmutableGraph contract allows; only its first outdegree entries count
+        private int[] buffer = new int[16];
+
+        SampledGraph(long[] offsets, int[] arcs) {
+            this.offsets = offsets;
+            this.arcs = arcs;
+        }
+
+        public int numNodes() {
+            return offsets.length - 1;
+        }
+
+        public long numArcs() {
+            return arcs.length;
+        }
+
+        public boolean randomAccess() {
+            return true;
+        }
+
+        public int outdegree(int x) {
+            return (int) (offsets[x + 1] - offsets[x]);
+        }
+
+        public int[] successorArray(int x) {
+            int degree = outdegree(x);
+            if (buffer.length < degree) {
+                buffer = new int[Math.max(degree, 2 * buffer.length)];
+            }
+            System.arraycopy(arcs, (int) offsets[x], buffer, 0, degree);
+            return buffer;
+        }
+
+        // The arrays are never modified, so copies share them and only get their own successor buffer
+        public ImmutableGraph copy() {
+            return new SampledGraph(offsets, arcs);
+        }
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            if (args.length < 2 || args.length > 4)
+                throw new IllegalArgumentException("Usage: java KCoreApprox basename sampleRate [bz|m] [seed]");
+
+            String basename = args[0];
+            double rate = Double.parseDouble(args[1]);
+            String engine = args.length > 2 ? args[2] : "m";
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+            System.out.println("Starting " + basename + " at sample rate " + rate);
+
+            KCoreApprox approx = new KCoreApprox(ImmutableGraph.loadMapped(basename), rate, seed);
+            approx.sample();
+            System.out.println("Sampled " + approx.sample.numArcs() + " arcs in "
+                    + (System.currentTimeMillis() - startTime) / 1000.0 + " sec");
+
+            CompactCoreArray sampledCores = approx.computeSampledCores(engine);
+            approx.store(basename, sampledCores);
+
+            System.out.println(basename + ": Time elapsed (sec) = " + (System.currentTimeMillis() - startTime) / 1000.0);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
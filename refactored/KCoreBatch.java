@@ -0,0 +1,260 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class KCoreBatch {
+    // Decoder buffers, successor arrays and bookkeeping that every job needs on top of its own arrays
+    private static final long JOB_OVERHEAD_BYTES = 16L << 20;
+
+    // One manifest line with its predicted footprint and, once run, its outcome
+    static class Job {
+        final String basename;
+        final String engine;
+        final String output;
+
+        int numNodes;
+        long numArcs;
+        long heapBytes;
+        long offHeapBytes;
+
+        long submitted;
+        long started;
+        long finished;
+        int kmax;
+        Throwable failure;
+
+        Job(String basename, String engine, String output) {
+            this.basename = basename;
+            this.engine = engine;
+            this.output = output;
+        }
+    }
+
+    private final int threads;
+    private final long heapBudget;
+    private final long offHeapBudget; // 0 for no limit
+
+    private int running = 0;
+    private long reservedHeap = 0;
+    private long reservedOffHeap = 0;
+    private long peakHeap = 0;
+
+    public KCoreBatch(int threads, long heapBudget, long offHeapBudget) {
+        this.threads = threads;
+        this.heapBudget = heapBudget;
+        this.offHeapBudget = offHeapBudget;
+    }
+
+    // Read "basename engine [output]" lines; blank lines and lines starting with # are skipped
+    public static List<Job> parseManifest(String path) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\\s+");
+                if (fields.length < 2 || fields.length > 3) {
+                    throw new IOException(path + ":" + lineNumber + ": expected basename engine [output], got " + line);
+                }
+                if (!fields[1].equals("bz") && !fields[1].equals("m") && !fields[1].equals("m-async")) {
+                    throw new IOException(path + ":" + lineNumber + ": unknown engine '" + fields[1]
+                            + "', expected bz, m or m-async");
+                }
+
+                Job job = new Job(fields[0], fields[1], fields.length == 3 ? fields[2] : fields[0] + ".cores");
+                predictFootprint(job);
+                jobs.add(job);
+            }
+        }
+
+        return jobs;
+    }
+
+    // Helper method to predict the memory of a job from the .properties file and the sizes of the graph files
+    static void predictFootprint(Job job) throws IOException {
+        Properties properties = new Properties();
+        try (FileInputStream in = new FileInputStream(job.basename + ImmutableGraph.PROPERTIES_EXTENSION)) {
+            properties.load(in);
+        }
+        job.numNodes = Integer.parseInt(properties.getProperty("nodes").trim());
+        job.numArcs = Long.parseLong(properties.getProperty("arcs").trim());
+
+        long n = job.numNodes;
+        long graphBytes = new File(job.basename + ".graph").length();
+        long offsetsBytes = new File(job.basename + ".offsets").length();
+        int maxDegree = GraphStatistics.peekMaxDegree(job.basename);
+        long bins = 4L * ((maxDegree >= 0 ? maxDegree : Math.min(n, job.numArcs)) + 1);
+
+        // Offsets end up on the heap as an Elias-Fano list of about the size of the .offsets file
+        long heap = JOB_OVERHEAD_BYTES + offsetsBytes;
+        switch (job.engine) {
+        case "bz":
+            // vert and pos, one byte per degree, the bins, and the whole graph loaded like KCoreWG_BZ.main does
+            job.heapBytes = heap + 9 * n + bins + graphBytes;
+            job.offHeapBytes = 0;
+            break;
+        case "m":
+            // Estimates plus the schedule and its per-iteration copy; the graph stays mapped
+            job.heapBytes = heap + 3 * n;
+            job.offHeapBytes = graphBytes;
+            break;
+        default:
+            // Estimates, schedule flags, the bucket links and the bucket heads
+            job.heapBytes = heap + 6 * n + bins;
+            job.offHeapBytes = graphBytes;
+        }
+    }
+
+    // Run every job on the shared pool, admitting the first waiting job that fits in what is left of the budgets
+    public void run(List<Job> jobs) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Job> waiting = new ArrayList<>(jobs);
+        long now = System.currentTimeMillis();
+        for (Job job : jobs) {
+            job.submitted = now;
+        }
+
+        try {
+            while (!waiting.isEmpty()) {
+                Job job;
+                synchronized (this) {
+                    while ((job = nextAdmissible(waiting)) == null) {
+                        wait();
+                    }
+                    waiting.remove(job);
+                    running++;
+                    reservedHeap += job.heapBytes;
+                    reservedOffHeap += job.offHeapBytes;
+                    peakHeap = Math.max(peakHeap, reservedHeap);
+                }
+
+                final Job admitted = job;
+                System.out.println("Admitting " + admitted.basename + " (" + admitted.engine + "), predicted heap "
+                        + megabytes(admitted.heapBytes) + " MiB, mapped " + megabytes(admitted.offHeapBytes) + " MiB");
+                executor.execute(() -> runJob(admitted));
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+    }
+
+    // Helper method to pick a job to admit; one larger than a whole budget only runs on an otherwise idle JVM
+    private Job nextAdmissible(List<Job> waiting) {
+        if (running >= threads) {
+            return null;
+        }
+
+        for (Job job : waiting) {
+            boolean heapFits = reservedHeap + job.heapBytes <= heapBudget;
+            boolean offHeapFits = offHeapBudget == 0 || reservedOffHeap + job.offHeapBytes <= offHeapBudget;
+            if (heapFits && offHeapFits || running == 0) {
+                if (!heapFits || !offHeapFits) {
+                    System.err.println("Warning: " + job.basename + " exceeds the memory budget, running it alone");
+                }
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private void runJob(Job job) {
+        job.started = System.currentTimeMillis();
+        try {
+            CompactCoreArray cores = runEngine(job);
+            job.kmax = cores.max();
+            store(cores, job.output);
+        } catch (Throwable t) {
+            // A failed or oversized job is reported with the others instead of stopping the batch
+            job.failure = t;
+        } finally {
+            job.finished = System.currentTimeMillis();
+            synchronized (this) {
+                running--;
+                reservedHeap -= job.heapBytes;
+                reservedOffHeap -= job.offHeapBytes;
+                notifyAll();
+            }
+            System.out.println("Finished " + job.basename + " (" + job.engine + ") in "
+                    + (job.finished - job.started) / 1000.0 + " sec" + (job.failure != null ? ", failed: " + job.failure : ""));
+        }
+    }
+
+    // Helper method to load a graph the way the engine's own main does and decompose it
+    private static CompactCoreArray runEngine(Job job) throws IOException {
+        if (job.engine.equals("bz")) {
+            ImmutableGraph graph = ImmutableGraph.load(job.basename);
+            return new KCoreWG_BZ(graph, GraphStatistics.loadOrBuild(job.basename, graph), 1).KCoreCompute();
+        }
+
+        ImmutableGraph graph = ImmutableGraph.loadMapped(job.basename);
+        KCoreWG_M kCore = new KCoreWG_M(graph, GraphStatistics.loadOrBuild(job.basename, graph));
+        return job.engine.equals("m") ? kCore.computeKCore() : kCore.computeKCoreAsync();
+    }
+
+    private static void store(CompactCoreArray cores, String output) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(output), 1 << 16)) {
+            for (int v = 0; v < cores.length(); v++) {
+                bw.write(v + ":" + cores.get(v) + " \n");
+            }
+        }
+    }
+
+    public void printReport(List<Job> jobs, long startTime) {
+        System.out.println("Graph\tEngine\tVertices\tArcs\tPredicted Heap (MiB)\tWait (sec)\tRun (sec)\tArcs/sec\tkmax");
+        for (Job job : jobs) {
+            double runSeconds = (job.finished - job.started) / 1000.0;
+            System.out.println(job.basename + "\t" + job.engine + "\t" + job.numNodes + "\t" + job.numArcs + "\t"
+                    + megabytes(job.heapBytes) + "\t" + (job.started - job.submitted) / 1000.0 + "\t" + runSeconds
+                    + "\t" + (job.failure != null ? "failed" : String.format("%.0f", job.numArcs / Math.max(runSeconds, 0.001)))
+                    + "\t" + (job.failure != null ? "-" : Integer.toString(job.kmax)));
+        }
+        System.out.println("Peak reserved heap (MiB)\t" + megabytes(peakHeap) + " of " + megabytes(heapBudget));
+        System.out.println("Batch: Time elapsed (sec) = " + (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+    private static long megabytes(long bytes) {
+        return bytes >> 20;
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        long startTime = System.currentTimeMillis();
+        if (args.length != 1) {
+            System.err.println("Usage: java KCoreBatch manifest");
+            System.exit(1);
+        }
+
+        long heapBudget = Long.getLong("heap_budget_mb", Runtime.getRuntime().maxMemory() * 9 / 10 >> 20) << 20;
+        long offHeapBudget = Long.getLong("offheap_budget_mb", 0) << 20;
+        int threads = Integer.getInteger("num_threads", Runtime.getRuntime().availableProcessors());
+
+        List<Job> jobs = parseManifest(args[0]);
+        System.out.println("Running " + jobs.size() + " jobs on " + threads + " threads within " + megabytes(heapBudget)
+                + " MiB of heap");
+
+        KCoreBatch batch = new KCoreBatch(threads, heapBudget, offHeapBudget);
+        batch.run(jobs);
+        batch.printReport(jobs, startTime);
+    }
+
+}
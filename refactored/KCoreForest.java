@@ -0,0 +1,291 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class KCoreForest {
+    ImmutableGraph G;
+    int n;
+    CompactCoreArray core;
+
+    // Union-find over vertices, indexed by vertex id
+    private int[] uf;
+    private int[] setSize;
+    private int[] nodeOf; // forest node of a union-find root, OPEN while it is being grown
+    private int[] pendingHead; // children waiting for the root's next forest node
+    private int[] pendingTail;
+    private boolean[] active;
+
+    // Forest: one node per connected component of each k-core, indexed by node id
+    int numNodes;
+    int[] parent;
+    int[] level;
+    int[] size;
+    private int[] nextSibling;
+    int[] vertexNode; // deepest forest node containing each vertex
+
+    private static final int OPEN = -1;
+    private static final int NONE = -1;
+
+    // Initialization: the forest is built over an already computed core decomposition
+    public KCoreForest(ImmutableGraph G, CompactCoreArray core) {
+        this.G = G;
+        this.n = G.numNodes();
+        this.core = core;
+    }
+
+    // Build the core forest by activating vertices in reverse peeling order (highest core first)
+    public void build() {
+        initializeArrays();
+        int[] order = sortVerticesByCoreDescending();
+
+        int i = 0;
+        while (i < n) {
+            int k = core.get(order[i]);
+            int end = i;
+            while (end < n && core.get(order[end]) == k) {
+                end++;
+            }
+
+            // All edges inside the k-core are unioned once every vertex of core k is active
+            for (int j = i; j < end; j++) {
+                activateVertex(order[j]);
+            }
+            for (int j = i; j < end; j++) {
+                closeComponent(order[j], k);
+            }
+            for (int j = i; j < end; j++) {
+                vertexNode[order[j]] = nodeOf[find(order[j])];
+            }
+
+            i = end;
+        }
+    }
+
+    // Helper method to allocate union-find and forest arrays
+    private void initializeArrays() {
+        uf = new int[n];
+        setSize = new int[n];
+        nodeOf = new int[n];
+        pendingHead = new int[n];
+        pendingTail = new int[n];
+        active = new boolean[n];
+
+        // Every forest node contains at least one vertex of its own level, so n nodes suffice
+        parent = new int[n];
+        level = new int[n];
+        size = new int[n];
+        nextSibling = new int[n];
+        vertexNode = new int[n];
+        numNodes = 0;
+    }
+
+    // Helper method to bin-sort vertices by core number, highest core first
+    private int[] sortVerticesByCoreDescending() {
+        int kmax = 0;
+        for (int v = 0; v < n; v++) {
+            kmax = Math.max(kmax, core.get(v));
+        }
+
+        int[] start = new int[kmax + 2];
+        for (int v = 0; v < n; v++) {
+            start[kmax - core.get(v) + 1]++;
+        }
+        for (int k = 1; k < start.length; k++) {
+            start[k] += start[k - 1];
+        }
+
+        int[] order = new int[n];
+        for (int v = 0; v < n; v++) {
+            order[start[kmax - core.get(v)]++] = v;
+        }
+        return order;
+    }
+
+    // Helper method to add a vertex as a singleton set and union it with its active neighbours
+    private void activateVertex(int v) {
+        uf[v] = v;
+        setSize[v] = 1;
+        nodeOf[v] = OPEN;
+        pendingHead[v] = NONE;
+        pendingTail[v] = NONE;
+        active[v] = true;
+
+        int v_deg = G.outdegree(v);
+        int[] N_v = G.successorArray(v);
+        for (int j = 0; j < v_deg; j++) {
+            int u = N_v[j];
+            if (active[u]) {
+                union(v, u);
+            }
+        }
+    }
+
+    // Helper method to find a set representative with path halving
+    private int find(int v) {
+        while (uf[v] != v) {
+            uf[v] = uf[uf[v]];
+            v = uf[v];
+        }
+        return v;
+    }
+
+    // Helper method to union two sets by size, carrying their pending children along
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) {
+            return;
+        }
+
+        openComponent(ra);
+        openComponent(rb);
+
+        if (setSize[ra] < setSize[rb]) {
+            int temp = ra;
+            ra = rb;
+            rb = temp;
+        }
+
+        uf[rb] = ra;
+        setSize[ra] += setSize[rb];
+        appendPending(ra, rb);
+    }
+
+    // Helper method to turn a closed component from a higher level into a pending child
+    private void openComponent(int root) {
+        int node = nodeOf[root];
+        if (node == OPEN) {
+            return;
+        }
+
+        nextSibling[node] = NONE;
+        if (pendingHead[root] == NONE) {
+            pendingHead[root] = node;
+        } else {
+            nextSibling[pendingTail[root]] = node;
+        }
+        pendingTail[root] = node;
+        nodeOf[root] = OPEN;
+    }
+
+    // Helper method to move the pending children of one root to the end of another's list
+    private void appendPending(int to, int from) {
+        if (pendingHead[from] == NONE) {
+            return;
+        }
+        if (pendingHead[to] == NONE) {
+            pendingHead[to] = pendingHead[from];
+        } else {
+            nextSibling[pendingTail[to]] = pendingHead[from];
+        }
+        pendingTail[to] = pendingTail[from];
+        pendingHead[from] = NONE;
+        pendingTail[from] = NONE;
+    }
+
+    // Helper method to create the forest node for a component that grew at level k
+    private void closeComponent(int v, int k) {
+        int root = find(v);
+        if (nodeOf[root] != OPEN) {
+            return;
+        }
+
+        int id = numNodes++;
+        parent[id] = NONE;
+        level[id] = k;
+        size[id] = setSize[root];
+
+        for (int c = pendingHead[root]; c != NONE; c = nextSibling[c]) {
+            parent[c] = id;
+        }
+
+        nodeOf[root] = id;
+        pendingHead[root] = NONE;
+        pendingTail[root] = NONE;
+    }
+
+    // Store the forest as a parent array with level and size per node, followed by vertex nodes
+    public void store(String basename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(basename + ".forest")))) {
+            out.writeInt(numNodes);
+            out.writeInt(n);
+            for (int i = 0; i < numNodes; i++) {
+                out.writeInt(parent[i]);
+            }
+            for (int i = 0; i < numNodes; i++) {
+                out.writeInt(level[i]);
+            }
+            for (int i = 0; i < numNodes; i++) {
+                out.writeInt(size[i]);
+            }
+            for (int v = 0; v < n; v++) {
+                out.writeInt(vertexNode[v]);
+            }
+        }
+    }
+
+    // Helper method to print, for every k, the connected components of the k-core, the largest one and how many of them
+    // first appear at k. A node is a component of the k-core for k in (level of its parent, its own level].
+    private void printLevelSummary() {
+        System.out.println("k\tcomponents\tlargest\tnew components");
+        if (numNodes == 0) {
+            return;
+        }
+
+        // Nodes are created level by level from the highest core down
+        int maxLevel = level[0];
+        int minLevel = level[numNodes - 1];
+        int[] created = new int[maxLevel + 1];
+        int[] merged = new int[maxLevel + 1]; // nodes whose parent is at this level, so they stop being components
+        for (int i = 0; i < numNodes; i++) {
+            created[level[i]]++;
+            if (parent[i] != NONE) {
+                merged[level[parent[i]]]++;
+            }
+        }
+
+        // A node's parent is at least as large, so the largest component of the k-core is the largest node at level >= k
+        int components = 0;
+        int largest = 0;
+        int i = 0;
+        for (int k = maxLevel; k >= minLevel; k--) {
+            components += created[k] - merged[k];
+            while (i < numNodes && level[i] == k) {
+                largest = Math.max(largest, size[i]);
+                i++;
+            }
+            System.out.println(k + "\t" + components + "\t" + largest + "\t" + created[k]);
+        }
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            if (args.length != 1)
+                throw new IllegalArgumentException("Usage: java KCoreForest basename");
+
+            String basename = args[0];
+            System.out.println("Starting " + basename);
+
+            KCoreWG_BZ kc = new KCoreWG_BZ(basename,
+                    Integer.getInteger("num_threads", Runtime.getRuntime().availableProcessors()));
+            CompactCoreArray res = kc.KCoreCompute();
+
+            KCoreForest forest = new KCoreForest(kc.G, res);
+            forest.build();
+            forest.store(basename);
+            forest.printLevelSummary();
+
+            System.out.println("Forest nodes: " + forest.numNodes);
+            System.out.println(basename + ": Time elapsed (sec) = " + (System.currentTimeMillis() - startTime) / 1000.0);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -35,6 +35,9 @@ public class KCoreGC_M implements GraphChiProgram<Integer, Integer> {
     protected int nVertexes;
     private int nIterations;
     private static Logger logger;
+    private WarmStart warmStart;
+    private VertexIdTranslate warmStartTranslate;
+    private int[] estimates; // by internal vertex id when vertices are kept in memory, null when values live on edges
 
     static{
         INFINITY = Integer.MAX_VALUE;
@@ -51,33 +54,58 @@ public class KCoreGC_M implements GraphChiProgram<Integer, Integer> {
     public void update(ChiVertex<Integer, Integer> v, GraphChiContext context) {
     
         if (context.getIteration() == 0) {
-            initializeVertexValue(v, v.numOutEdges(), context);
+            initializeVertexValue(v, initialEstimate(v), context);
         } else {
             updateVertexValue(v, context);
         }
     }
     
+    // Start from the degree, or from the warm start bound of the vertex under its original id
+    private int initialEstimate(ChiVertex<Integer, Integer> v) {
+        int degree = v.numOutEdges();
+        if (warmStart == null) {
+            return degree;
+        }
+        return warmStart.seed(warmStartTranslate.backward(v.getId()), degree);
+    }
+
     private void initializeVertexValue(ChiVertex<Integer, Integer> v, int degree, GraphChiContext context) {
-        v.setValue(degree);
-        broadcastValueToNeighbors(v, degree);
+        storeValue(v, degree);
         updateCounters(context);
         scheduleVertex(v, context);
     }
     
     private void updateVertexValue(ChiVertex<Integer, Integer> v, GraphChiContext context) {
         int localEstimate = computeUpperBound(v);
-        if (localEstimate < v.getValue()) {
+        if (localEstimate < valueOf(v)) {
             updateVertexWithBound(v, localEstimate, context);
         }
     }
     
     private void updateVertexWithBound(ChiVertex<Integer, Integer> v, int localEstimate, GraphChiContext context) {
-        v.setValue(localEstimate);
-        broadcastValueToNeighbors(v, localEstimate);
+        storeValue(v, localEstimate);
         updateCounters(context);
         scheduleUpdatedVertices(v, localEstimate, context);
     }
     
+    // Helper method to publish a new estimate: into the in-memory array, or onto the vertex and all its out-edges
+    private void storeValue(ChiVertex<Integer, Integer> v, int value) {
+        if (estimates != null) {
+            estimates[v.getId()] = value;
+        } else {
+            v.setValue(value);
+            broadcastValueToNeighbors(v, value);
+        }
+    }
+
+    private int valueOf(ChiVertex<Integer, Integer> v) {
+        return estimates != null ? estimates[v.getId()] : v.getValue();
+    }
+
+    private int neighborValue(ChiVertex<Integer, Integer> v, int i) {
+        return estimates != null ? estimates[v.inEdge(i).getVertexId()] : v.inEdge(i).getValue();
+    }
+
     private void updateCounters(GraphChiContext context) {
         vertexValuesUpdated++;
         nVertexesScheduled++;
@@ -102,7 +130,7 @@ private void scheduleVertex(ChiVertex<Integer, Integer> v, GraphChiContext conte
 private void scheduleUpdatedVertices(ChiVertex<Integer, Integer> v, int localEstimate, GraphChiContext context) {
     int d_v = v.numOutEdges();
     for (int i = 0; i < d_v; i++) {
-        int core_u = v.inEdge(i).getValue();
+        int core_u = neighborValue(v, i);
         if (localEstimate <= core_u) {
             scheduleVertexUpdate(v.inEdge(i).getVertexId(), context);
         }
@@ -116,7 +144,7 @@ private void scheduleVertexUpdate(int vertexId, GraphChiContext context) {
 
 private int computeUpperBound(ChiVertex<Integer, Integer> v) {
     int[] coreCount = calculateCoreCounts(v);
-    return findUpperBound(coreCount, v.numOutEdges(), v.getValue());
+    return findUpperBound(coreCount, v.numOutEdges(), valueOf(v));
 }
 
 private int[] calculateCoreCounts(ChiVertex<Integer, Integer> v) {
@@ -125,11 +153,12 @@ private int[] calculateCoreCounts(ChiVertex<Integer, Integer> v) {
 }
 
 private int[] computeCoreCounts(ChiVertex<Integer, Integer> v) {
-    int[] coreCount = initializeCoreCountArray(v.getValue());
+    int core_v = valueOf(v);
+    int[] coreCount = initializeCoreCountArray(core_v);
 
     for (int i = 0; i < v.numOutEdges(); i++) {
-        int core_u = v.inEdge(i).getValue();
-        int j = Math.min(v.getValue(), core_u);
+        int core_u = neighborValue(v, i);
+        int j = Math.min(core_v, core_u);
         coreCount[j]++;
     }
 
@@ -356,9 +385,12 @@ private static void printUsage() {
 
 private static void outputCoreValues(String fileName, GraphChiEngine<Integer, Integer> engine, KCoreGC_M kCoreGC_M, BufferedWriter bw) throws IOException {
     BufferedWriter bufferedWriter = createBufferedWriter(fileName);
-    TreeSet<IdInt> topToBottom = getTopList(fileName, engine);
-
-    SortedMap<Integer, Integer> result = prepareResult(topToBottom, engine);
+    SortedMap<Integer, Integer> result;
+    if (kCoreGC_M.estimates != null) {
+        result = prepareResult(kCoreGC_M.estimates, engine);
+    } else {
+        result = prepareResult(getTopList(fileName, engine), engine);
+    }
 
     writeResultToBufferedWriter(result, bufferedWriter);
     closeBufferedWriter(bufferedWriter);
@@ -384,6 +416,17 @@ private static SortedMap<Integer, Integer> prepareResult(TreeSet<IdInt> topToBot
     return result;
 }
 
+private static SortedMap<Integer, Integer> prepareResult(int[] estimates, GraphChiEngine<Integer, Integer> engine) {
+    SortedMap<Integer, Integer> result = new TreeMap<>();
+    VertexIdTranslate trans = engine.getVertexIdTranslate();
+
+    for (int id = 0; id < estimates.length; id++) {
+        result.put(trans.backward(id), estimates[id]);
+    }
+
+    return result;
+}
+
 private static void writeResultToBufferedWriter(SortedMap<Integer, Integer> result, BufferedWriter bufferedWriter) throws IOException {
     for (Integer v : result.keySet()) {
         bufferedWriter.write(v + ":" + result.get(v) + "\n");
@@ -451,6 +494,8 @@ private static void processFile(String fileName, int nShards, FastSharder sharde
 private static GraphChiEngine<Integer, Integer> runGraphChi(String fileName, int nShards, KCoreGC_M kCoreGC_M) throws FileNotFoundException, IOException {
     GraphChiEngine<Integer, Integer> engine = createGraphChiEngine(fileName, nShards);
     setupGraphChiEngine(engine);
+    configureWarmStart(engine, kCoreGC_M);
+    configureInMemoryVertices(engine, kCoreGC_M);
     executeGraphChi(engine, kCoreGC_M);
 
     return engine;
@@ -474,6 +519,32 @@ private static void setupGraphChiEngine(GraphChiEngine<Integer, Integer> engine)
     // Any additional setup if needed
 }
 
+private static void configureInMemoryVertices(GraphChiEngine<Integer, Integer> engine, KCoreGC_M kCoreGC_M) {
+    if (!Boolean.getBoolean("vertices_in_memory")) {
+        return;
+    }
+
+    // Estimates live in a primitive array, so shards only stream adjacency and no vertex or edge data is read or written
+    kCoreGC_M.estimates = new int[engine.numVertices()];
+    engine.setOnlyAdjacency(true);
+    engine.setModifiesInedges(false);
+    engine.setModifiesOutedges(false);
+    engine.setVertexDataConverter(null);
+    logger.info("Keeping " + engine.numVertices() + " vertex estimates in memory");
+}
+
+private static void configureWarmStart(GraphChiEngine<Integer, Integer> engine, KCoreGC_M kCoreGC_M) throws IOException {
+    WarmStart warmStart = WarmStart.fromProperties(engine.numVertices());
+    if (warmStart == null) {
+        return;
+    }
+
+    // The .cores file holds original vertex ids, GraphChi hands out translated ones
+    kCoreGC_M.warmStart = warmStart;
+    kCoreGC_M.warmStartTranslate = engine.getVertexIdTranslate();
+    logger.info("Warm start from " + System.getProperty("warm_start") + ": " + warmStart.knownCount() + " vertices seeded");
+}
+
 private static void executeGraphChi(GraphChiEngine<Integer, Integer> engine, KCoreGC_M kCoreGC_M) throws IOException {
     engine.run(kCoreGC_M, INFINITY);
     logger.info("Ready.");
@@ -0,0 +1,333 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.labelling.ArcLabelledImmutableGraph;
+import it.unimi.dsi.webgraph.labelling.ArcLabelledNodeIterator.LabelledArcIterator;
+
+public class KCoreGeneralized {
+    // Upper limit on the number of strength buckets when no weight quantum is given
+    private static final int MAX_BUCKETS = 1 << 22;
+
+    // Doubly linked bucket lists; keys never move below the level being peeled, so the scan only goes up
+    static class BucketQueue {
+        private final int[] head;
+        private final int[] next;
+        private final int[] prev;
+        private int current = 0;
+
+        BucketQueue(int n, int maxKey) {
+            head = new int[maxKey + 1];
+            next = new int[n];
+            prev = new int[n];
+            Arrays.fill(head, -1);
+        }
+
+        void insert(int v, int key) {
+            next[v] = head[key];
+            prev[v] = -1;
+            if (head[key] != -1) {
+                prev[head[key]] = v;
+            }
+            head[key] = v;
+        }
+
+        void remove(int v, int key) {
+            if (prev[v] != -1) {
+                next[prev[v]] = next[v];
+            } else {
+                head[key] = next[v];
+            }
+            if (next[v] != -1) {
+                prev[next[v]] = prev[v];
+            }
+        }
+
+        void move(int v, int from, int to) {
+            if (from != to) {
+                remove(v, from);
+                insert(v, to);
+            }
+        }
+
+        // Remove and return a vertex with the lowest key, or -1 once every bucket is empty
+        int poll() {
+            while (current < head.length && head[current] == -1) {
+                current++;
+            }
+            if (current == head.length) {
+                return -1;
+            }
+            int v = head[current];
+            remove(v, current);
+            return v;
+        }
+
+        int level() {
+            return current;
+        }
+    }
+
+    // Weight quantum that spreads the largest strength over MAX_BUCKETS; integer weights never go below a quantum of 1,
+    // so they stay exact whenever their strengths fit
+    public static double defaultQuantum(ArcLabelledImmutableGraph graph) {
+        double maxStrength = 0;
+        boolean integral = true;
+        for (int v = 0; v < graph.numNodes(); v++) {
+            double strength = 0;
+            LabelledArcIterator successors = graph.successors(v);
+            for (int j = graph.outdegree(v); j > 0; j--) {
+                successors.nextInt();
+                double weight = weightOf(successors);
+                integral &= weight == Math.rint(weight);
+                strength += weight;
+            }
+            maxStrength = Math.max(maxStrength, strength);
+        }
+
+        double quantum = maxStrength / MAX_BUCKETS;
+        return integral || quantum == 0 ? Math.max(1, quantum) : quantum;
+    }
+
+    private static double weightOf(LabelledArcIterator successors) {
+        double weight = successors.label().getDouble();
+        if (weight < 0 || Double.isNaN(weight)) {
+            throw new IllegalArgumentException("Arc weights must be non-negative, got " + weight);
+        }
+        return weight;
+    }
+
+    private static int quantize(double weight, double quantum) {
+        return (int) Math.round(weight / quantum);
+    }
+
+    // s-cores of a symmetric weighted graph, in quanta: the largest s such that the vertex keeps strength >= s
+    public static int[] sCores(ArcLabelledImmutableGraph graph, double quantum) {
+        int n = graph.numNodes();
+        int[] strength = new int[n];
+        int maxStrength = 0;
+
+        for (int v = 0; v < n; v++) {
+            long sum = 0;
+            LabelledArcIterator successors = graph.successors(v);
+            for (int j = graph.outdegree(v); j > 0; j--) {
+                successors.nextInt();
+                sum += quantize(weightOf(successors), quantum);
+            }
+            if (sum > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Strength of " + v + " overflows, use a larger weight quantum");
+            }
+            strength[v] = (int) sum;
+            maxStrength = Math.max(maxStrength, strength[v]);
+        }
+
+        BucketQueue queue = new BucketQueue(n, maxStrength);
+        for (int v = 0; v < n; v++) {
+            queue.insert(v, strength[v]);
+        }
+
+        // Peeled vertices keep their level in strength[]; removed marks them so neighbours stop updating them
+        boolean[] removed = new boolean[n];
+        int v;
+        while ((v = queue.poll()) != -1) {
+            int level = queue.level();
+            removed[v] = true;
+
+            LabelledArcIterator successors = graph.successors(v);
+            for (int j = graph.outdegree(v); j > 0; j--) {
+                int u = successors.nextInt();
+                int weight = quantize(weightOf(successors), quantum);
+                if (!removed[u] && strength[u] > level) {
+                    int updated = Math.max(level, strength[u] - weight);
+                    queue.move(u, strength[u], updated);
+                    strength[u] = updated;
+                }
+            }
+        }
+
+        return strength;
+    }
+
+    // For a fixed k, the largest l such that the vertex is in the (k,l)-core, or -1 if it is not even in the (k,0)-core
+    public static int[] lCores(ImmutableGraph graph, ImmutableGraph transpose, int k) {
+        int n = graph.numNodes();
+        int[] indeg = new int[n];
+        int[] outdeg = new int[n];
+        boolean[] removed = new boolean[n];
+        int[] stack = new int[n];
+        int stackSize = 0;
+
+        for (int v = 0; v < n; v++) {
+            indeg[v] = transpose.outdegree(v);
+            outdeg[v] = graph.outdegree(v);
+            if (indeg[v] < k) {
+                removed[v] = true;
+                stack[stackSize++] = v;
+            }
+        }
+
+        // Cascade the in-degree constraint first; what survives is the (k,0)-core
+        while (stackSize > 0) {
+            int v = stack[--stackSize];
+            outdeg[v] = -1;
+
+            int d = graph.outdegree(v);
+            int[] successors = graph.successorArray(v);
+            for (int j = 0; j < d; j++) {
+                int w = successors[j];
+                if (!removed[w] && --indeg[w] < k) {
+                    removed[w] = true;
+                    stack[stackSize++] = w;
+                }
+            }
+
+            d = transpose.outdegree(v);
+            int[] predecessors = transpose.successorArray(v);
+            for (int j = 0; j < d; j++) {
+                int u = predecessors[j];
+                if (!removed[u]) {
+                    outdeg[u]--;
+                }
+            }
+        }
+
+        int maxOutdeg = 0;
+        for (int v = 0; v < n; v++) {
+            maxOutdeg = Math.max(maxOutdeg, outdeg[v]);
+        }
+        BucketQueue queue = new BucketQueue(n, maxOutdeg);
+        for (int v = 0; v < n; v++) {
+            if (!removed[v]) {
+                queue.insert(v, outdeg[v]);
+            }
+        }
+
+        // Peel by out-degree; a vertex whose in-degree drops below k leaves at the current level
+        int v;
+        while ((v = queue.poll()) != -1) {
+            int level = queue.level();
+            removed[v] = true;
+
+            int d = graph.outdegree(v);
+            int[] successors = graph.successorArray(v);
+            for (int j = 0; j < d; j++) {
+                int w = successors[j];
+                if (!removed[w] && --indeg[w] < k && outdeg[w] > level) {
+                    queue.move(w, outdeg[w], level);
+                    outdeg[w] = level;
+                }
+            }
+
+            d = transpose.outdegree(v);
+            int[] predecessors = transpose.successorArray(v);
+            for (int j = 0; j < d; j++) {
+                int u = predecessors[j];
+                if (!removed[u] && outdeg[u] > level) {
+                    queue.move(u, outdeg[u], outdeg[u] - 1);
+                    outdeg[u]--;
+                }
+            }
+        }
+
+        return outdeg;
+    }
+
+    private static void store(int[] values, double scale, String filename) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename), 1 << 16)) {
+            for (int v = 0; v < values.length; v++) {
+                if (scale == 1) {
+                    bw.write(v + ":" + values[v] + "\n");
+                } else {
+                    bw.write(v + ":" + values[v] * scale + "\n");
+                }
+            }
+        }
+    }
+
+    private static int max(int[] values) {
+        int max = -1;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    // Helper method to load the transpose stored next to a directed graph as basename-t
+    private static ImmutableGraph loadTranspose(String basename) throws IOException {
+        String transposeBasename = basename + "-t";
+        if (!new File(transposeBasename + ImmutableGraph.PROPERTIES_EXTENSION).exists()) {
+            throw new IOException("No transpose " + transposeBasename + ", build it with: java -cp \"bin:lib/*\" "
+                    + "it.unimi.dsi.webgraph.Transform transposeOffline " + basename + " " + transposeBasename);
+        }
+        return ImmutableGraph.loadMapped(transposeBasename);
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        long startTime = System.currentTimeMillis();
+        String usage = "Usage: java KCoreGeneralized s-core labelledBasename\n"
+                + "       java KCoreGeneralized kl-core basename k\n"
+                + "       java KCoreGeneralized kl-frontier basename";
+
+        if (args.length < 2) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        String basename = args[1];
+        System.out.println("Starting " + basename);
+
+        switch (args[0]) {
+        case "s-core": {
+            ArcLabelledImmutableGraph graph = ArcLabelledImmutableGraph.load(basename);
+            String quantumProperty = System.getProperty("weight_quantum");
+            double quantum = quantumProperty != null ? Double.parseDouble(quantumProperty) : defaultQuantum(graph);
+
+            int[] sCores = sCores(graph, quantum);
+            store(sCores, quantum, basename + ".scores");
+            System.out.println("Weight Quantum\tMax s-core (smax)\n" + quantum + "\t" + max(sCores) * quantum);
+            break;
+        }
+        case "kl-core": {
+            if (args.length != 3) {
+                System.err.println(usage);
+                System.exit(1);
+            }
+            int k = Integer.parseInt(args[2]);
+            int[] lCores = lCores(ImmutableGraph.loadMapped(basename), loadTranspose(basename), k);
+            store(lCores, 1, basename + ".k" + k + ".lcores");
+            System.out.println("k\tMax l (lmax)\n" + k + "\t" + max(lCores));
+            break;
+        }
+        case "kl-frontier": {
+            ImmutableGraph graph = ImmutableGraph.loadMapped(basename);
+            ImmutableGraph transpose = loadTranspose(basename);
+
+            // One peeling pass per k until the (k,0)-core is empty
+            System.out.println("k\tMax l (lmax)\t|(k,0)-core|");
+            for (int k = 0;; k++) {
+                int[] lCores = lCores(graph, transpose, k);
+                int size = 0;
+                for (int l : lCores) {
+                    if (l >= 0) {
+                        size++;
+                    }
+                }
+                if (size == 0) {
+                    break;
+                }
+                System.out.println(k + "\t" + max(lCores) + "\t" + size);
+            }
+            break;
+        }
+        default:
+            System.err.println(usage);
+            System.exit(1);
+        }
+
+        System.out.println(basename + ": Time elapsed (sec) = " + (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+}
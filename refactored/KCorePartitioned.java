@@ -0,0 +1,517 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class KCorePartitioned {
+    private static final int MAGIC = 0x4B435057; // "KCPW"
+    // How often a coordinator waiting for connections checks that the launched workers are still alive
+    private static final int ACCEPT_POLL_MILLIS = 500;
+
+    // Split the vertices into contiguous ranges of about the same number of vertices plus arcs
+    public static int[] partition(ImmutableGraph graph, GraphStatistics stats, int numWorkers) {
+        int n = graph.numNodes();
+        long total = n;
+        if (stats != null) {
+            total += stats.numArcs;
+        } else {
+            for (int v = 0; v < n; v++) {
+                total += graph.outdegree(v);
+            }
+        }
+        int[] bounds = new int[numWorkers + 1];
+
+        long weight = 0;
+        int part = 1;
+        for (int v = 0; v < n && part < numWorkers; v++) {
+            weight += 1 + (stats != null ? stats.degree(v) : graph.outdegree(v));
+            if (weight >= total * part / numWorkers) {
+                bounds[part++] = v + 1;
+            }
+        }
+        while (part <= numWorkers) {
+            bounds[part++] = n;
+        }
+        return bounds;
+    }
+
+    // Run the coordinator on an accepted set of workers and write v:core lines to out, in vertex order
+    public static void coordinate(ServerSocket server, String basename, int[] bounds, PrintStream out)
+            throws IOException {
+        coordinate(server, basename, bounds, out, Collections.<Process>emptyList(), 0);
+    }
+
+    // As above, failing instead of hanging when a launched worker exits before connecting or a worker goes silent
+    // for timeoutMillis (0 for no limit)
+    public static void coordinate(ServerSocket server, String basename, int[] bounds, PrintStream out,
+            List<Process> launched, int timeoutMillis) throws IOException {
+        int numWorkers = bounds.length - 1;
+        List<Socket> sockets = new ArrayList<>();
+        DataInputStream[] in = new DataInputStream[numWorkers];
+        DataOutputStream[] outs = new DataOutputStream[numWorkers];
+
+        try {
+            for (int w = 0; w < numWorkers; w++) {
+                Socket socket = acceptWorker(server, launched, timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                sockets.add(socket);
+                in[w] = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                outs[w] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+                outs[w].writeInt(MAGIC);
+                outs[w].writeUTF(basename);
+                outs[w].writeInt(w);
+                outs[w].writeInt(numWorkers);
+                for (int bound : bounds) {
+                    outs[w].writeInt(bound);
+                }
+                outs[w].flush();
+                System.out.println("Worker " + w + " connected from " + socket.getRemoteSocketAddress() + ", owns ["
+                        + bounds[w] + ", " + bounds[w + 1] + ")");
+            }
+
+            long exchanged = exchangeRounds(in, outs);
+            System.out.println("Exchanged " + exchanged + " boundary updates");
+            collectCores(in, bounds, out);
+        } catch (SocketTimeoutException e) {
+            throw new IOException("A worker sent nothing for " + timeoutMillis / 1000 + " sec", e);
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    // Helper method to wait for the next worker, polling the launched processes so one that died fails the run
+    private static Socket acceptWorker(ServerSocket server, List<Process> launched, int timeoutMillis)
+            throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        server.setSoTimeout(ACCEPT_POLL_MILLIS);
+
+        while (true) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException e) {
+                for (int w = 0; w < launched.size(); w++) {
+                    Process process = launched.get(w);
+                    if (!process.isAlive()) {
+                        throw new IOException("Worker process " + w + " exited with code " + process.exitValue()
+                                + " before connecting");
+                    }
+                }
+                if (timeoutMillis > 0 && System.currentTimeMillis() >= deadline) {
+                    throw new IOException("No worker connected within " + timeoutMillis / 1000 + " sec");
+                }
+            }
+        }
+    }
+
+    // Helper method to relay boundary updates between workers until a round in which no estimate changed anywhere
+    private static long exchangeRounds(DataInputStream[] in, DataOutputStream[] out) throws IOException {
+        int numWorkers = in.length;
+        int[][] inbox = new int[numWorkers][16];
+        int[] inboxSize = new int[numWorkers];
+        long exchanged = 0;
+
+        for (int round = 0;; round++) {
+            long changed = 0;
+            Arrays.fill(inboxSize, 0);
+
+            for (int w = 0; w < numWorkers; w++) {
+                changed += in[w].readLong();
+                for (int d = 0; d < numWorkers; d++) {
+                    int count = in[w].readInt();
+                    int needed = inboxSize[d] + 2 * count;
+                    if (needed > inbox[d].length) {
+                        inbox[d] = Arrays.copyOf(inbox[d], Math.max(needed, 2 * inbox[d].length));
+                    }
+                    for (int i = 0; i < 2 * count; i++) {
+                        inbox[d][inboxSize[d]++] = in[w].readInt();
+                    }
+                    exchanged += count;
+                }
+            }
+
+            for (int d = 0; d < numWorkers; d++) {
+                out[d].writeLong(changed);
+                out[d].writeInt(inboxSize[d] / 2);
+                for (int i = 0; i < inboxSize[d]; i++) {
+                    out[d].writeInt(inbox[d][i]);
+                }
+                out[d].flush();
+            }
+
+            System.out.println("Round " + round + "\t" + changed + " estimates changed");
+            if (changed == 0) {
+                return exchanged;
+            }
+        }
+    }
+
+    private static void collectCores(DataInputStream[] in, int[] bounds, PrintStream out) throws IOException {
+        int kmax = 0;
+        for (int w = 0; w < in.length; w++) {
+            for (int v = bounds[w]; v < bounds[w + 1]; v++) {
+                int core = in[w].readInt();
+                kmax = Math.max(kmax, core);
+                out.print(v + ":" + core + " \n");
+            }
+        }
+        System.out.println("Max Core (kmax)\n" + kmax);
+    }
+
+    // Connect to a coordinator and run one partition; graph may be null to map the basename the coordinator sends
+    public static void runWorker(Socket socket, ImmutableGraph graph) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a KCorePartitioned coordinator: " + socket.getRemoteSocketAddress());
+        }
+        String basename = in.readUTF();
+        int id = in.readInt();
+        int[] bounds = new int[in.readInt() + 1];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = in.readInt();
+        }
+
+        if (graph == null) {
+            graph = ImmutableGraph.loadMapped(basename);
+        }
+        new Worker(graph, id, bounds).run(in, out);
+    }
+
+    // One vertex range with its own estimates and a sorted table of the remote neighbours it reads
+    static class Worker {
+        private final ImmutableGraph graph;
+        private final int id;
+        private final int[] bounds;
+        private final int lo;
+        private final int hi;
+
+        private final CompactCoreArray cores;
+        private boolean[] scheduled;
+        private boolean[] nextScheduled;
+        private int[] ghostIds;
+        private CompactCoreArray ghostCores;
+
+        // Owned vertices whose new estimate must reach each other worker after this round
+        private final int[][] outbox;
+        private final int[] outboxSize;
+        private final int[] lastQueued;
+
+        private int rounds = 0;
+        private long edgesScanned = 0;
+
+        Worker(ImmutableGraph graph, int id, int[] bounds) {
+            this.graph = graph;
+            this.id = id;
+            this.bounds = bounds;
+            this.lo = bounds[id];
+            this.hi = bounds[id + 1];
+
+            int numWorkers = bounds.length - 1;
+            cores = new CompactCoreArray(hi - lo);
+            scheduled = new boolean[hi - lo];
+            nextScheduled = new boolean[hi - lo];
+            outbox = new int[numWorkers][16];
+            outboxSize = new int[numWorkers];
+            lastQueued = new int[numWorkers];
+
+            initializeEstimates();
+        }
+
+        // Helper method to start every owned and remote neighbour at its degree, the same start every owner uses
+        private void initializeEstimates() {
+            int[] ghosts = new int[16];
+            int ghostCount = 0;
+
+            for (int v = lo; v < hi; v++) {
+                int degree = graph.outdegree(v);
+                cores.set(v - lo, degree);
+                scheduled[v - lo] = true;
+
+                int[] neighbors = graph.successorArray(v);
+                for (int i = 0; i < degree; i++) {
+                    int u = neighbors[i];
+                    if (u >= lo && u < hi) {
+                        continue;
+                    }
+                    if (ghostCount == ghosts.length) {
+                        ghostCount = sortUnique(ghosts, ghostCount);
+                        if (ghostCount > ghosts.length / 2) {
+                            ghosts = Arrays.copyOf(ghosts, 2 * ghosts.length);
+                        }
+                    }
+                    ghosts[ghostCount++] = u;
+                }
+            }
+
+            ghostIds = Arrays.copyOf(ghosts, sortUnique(ghosts, ghostCount));
+            ghostCores = new CompactCoreArray(ghostIds.length);
+            for (int i = 0; i < ghostIds.length; i++) {
+                ghostCores.set(i, graph.outdegree(ghostIds[i]));
+            }
+        }
+
+        private static int sortUnique(int[] a, int length) {
+            Arrays.sort(a, 0, length);
+            int unique = 0;
+            for (int i = 0; i < length; i++) {
+                if (unique == 0 || a[unique - 1] != a[i]) {
+                    a[unique++] = a[i];
+                }
+            }
+            return unique;
+        }
+
+        private int estimateOf(int u) {
+            if (u >= lo && u < hi) {
+                return cores.get(u - lo);
+            }
+            return ghostCores.get(Arrays.binarySearch(ghostIds, u));
+        }
+
+        // Helper method to find the worker owning a vertex, the last range starting at or before it
+        private int ownerOf(int u) {
+            int low = 0;
+            int high = bounds.length - 2;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (bounds[mid] <= u) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        void run(DataInputStream in, DataOutputStream out) throws IOException {
+            long startTime = System.currentTimeMillis();
+
+            while (true) {
+                long changed = evaluateScheduled();
+                sendOutboxes(out, changed);
+                if (receiveUpdates(in) == 0) {
+                    break;
+                }
+            }
+
+            for (int v = lo; v < hi; v++) {
+                out.writeInt(cores.get(v - lo));
+            }
+            out.flush();
+
+            System.out.println("Worker " + id + ": " + rounds + " rounds, " + edgesScanned + " edges scanned, "
+                    + ghostIds.length + " remote neighbours, " + (System.currentTimeMillis() - startTime) / 1000.0
+                    + " sec");
+        }
+
+        // Helper method to run one synchronous Montresor round over the scheduled owned vertices
+        private long evaluateScheduled() {
+            long changed = 0;
+            Arrays.fill(outboxSize, 0);
+            Arrays.fill(lastQueued, -1);
+
+            for (int v = lo; v < hi; v++) {
+                if (!scheduled[v - lo]) {
+                    continue;
+                }
+
+                int degree = graph.outdegree(v);
+                int[] neighbors = graph.successorArray(v);
+                edgesScanned += degree;
+
+                int estimate = computeEstimatedCore(cores.get(v - lo), degree, neighbors);
+                if (estimate >= cores.get(v - lo)) {
+                    continue;
+                }
+                cores.set(v - lo, estimate);
+                changed++;
+
+                for (int i = 0; i < degree; i++) {
+                    int u = neighbors[i];
+                    // Only neighbours above the new estimate see a different min(core_u, core_v)
+                    if (estimate >= estimateOf(u)) {
+                        continue;
+                    }
+                    if (u >= lo && u < hi) {
+                        nextScheduled[u - lo] = true;
+                    } else {
+                        queue(ownerOf(u), v);
+                    }
+                }
+            }
+
+            boolean[] swap = scheduled;
+            scheduled = nextScheduled;
+            nextScheduled = swap;
+            Arrays.fill(nextScheduled, false);
+            rounds++;
+            return changed;
+        }
+
+        private void queue(int worker, int v) {
+            // Successors of v are visited once per round, so one look at the last entry removes duplicates
+            if (lastQueued[worker] == v) {
+                return;
+            }
+            lastQueued[worker] = v;
+            if (outboxSize[worker] == outbox[worker].length) {
+                outbox[worker] = Arrays.copyOf(outbox[worker], 2 * outbox[worker].length);
+            }
+            outbox[worker][outboxSize[worker]++] = v;
+        }
+
+        private int computeEstimatedCore(int current, int degree, int[] neighbors) {
+            int[] frequency = new int[current + 1];
+            for (int i = 0; i < degree; i++) {
+                frequency[Math.min(current, estimateOf(neighbors[i]))]++;
+            }
+
+            int cumulative = 0;
+            for (int core = current; core >= 2; core--) {
+                cumulative += frequency[core];
+                if (cumulative >= core) {
+                    return core;
+                }
+            }
+
+            // Any node with a neighbour is in the 1-core; only isolated nodes keep a core of 0
+            return Math.min(current, 1);
+        }
+
+        private void sendOutboxes(DataOutputStream out, long changed) throws IOException {
+            out.writeLong(changed);
+            for (int d = 0; d < outbox.length; d++) {
+                out.writeInt(outboxSize[d]);
+                for (int i = 0; i < outboxSize[d]; i++) {
+                    int v = outbox[d][i];
+                    out.writeInt(v);
+                    out.writeInt(cores.get(v - lo));
+                }
+            }
+            out.flush();
+        }
+
+        // Helper method to apply remote estimates and schedule the owned neighbours they can lower
+        private long receiveUpdates(DataInputStream in) throws IOException {
+            long changed = in.readLong();
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                int u = in.readInt();
+                int core = in.readInt();
+                int ghost = Arrays.binarySearch(ghostIds, u);
+                if (ghost < 0 || core >= ghostCores.get(ghost)) {
+                    continue;
+                }
+                ghostCores.set(ghost, core);
+
+                // The graph is symmetric, so the owned neighbours of u are among its own successors
+                int degree = graph.outdegree(u);
+                int[] neighbors = graph.successorArray(u);
+                for (int j = 0; j < degree; j++) {
+                    int w = neighbors[j];
+                    if (w >= lo && w < hi && core < cores.get(w - lo)) {
+                        scheduled[w - lo] = true;
+                    }
+                }
+            }
+
+            return changed;
+        }
+    }
+
+    // Helper method to start the workers as child JVMs with the classpath of this one
+    private static List<Process> launchWorkers(int numWorkers, int port) throws IOException {
+        List<Process> processes = new ArrayList<>();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String workerHeap = System.getProperty("worker_xmx");
+
+        for (int w = 0; w < numWorkers; w++) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            if (workerHeap != null) {
+                command.add("-Xmx" + workerHeap);
+            }
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("KCorePartitioned");
+            command.add("worker");
+            command.add("127.0.0.1");
+            command.add(Integer.toString(port));
+            processes.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        return processes;
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        if (args.length == 3 && args[0].equals("worker")) {
+            try (Socket socket = new Socket(args[1], Integer.parseInt(args[2]))) {
+                runWorker(socket, null);
+            }
+            return;
+        }
+
+        if ((args.length != 3 && args.length != 4) || !args[0].equals("coordinator")) {
+            System.err.println("Usage: java KCorePartitioned coordinator basename numWorkers [port]\n"
+                    + "       java KCorePartitioned worker host port");
+            System.exit(1);
+        }
+
+        String basename = args[1];
+        int numWorkers = Integer.parseInt(args[2]);
+        int port = args.length == 4 ? Integer.parseInt(args[3]) : 0;
+        System.out.println("Starting " + basename + " on " + numWorkers + " workers");
+
+        ImmutableGraph graph = ImmutableGraph.loadMapped(basename);
+        int[] bounds = partition(graph, GraphStatistics.loadOrBuild(basename, graph), numWorkers);
+
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            System.out.println("Coordinator listening on 127.0.0.1:" + server.getLocalPort());
+
+            List<Process> workers = new ArrayList<>();
+            if (Boolean.parseBoolean(System.getProperty("launch_workers", "true"))) {
+                workers = launchWorkers(numWorkers, server.getLocalPort());
+            }
+            int timeoutMillis = Integer.getInteger("worker_timeout_sec", 3600) * 1000;
+
+            try (PrintStream ps = new PrintStream(new BufferedOutputStream(
+                    new FileOutputStream(basename + ".cores"), 1 << 16))) {
+                coordinate(server, basename, bounds, ps, workers, timeoutMillis);
+            } catch (IOException e) {
+                for (Process worker : workers) {
+                    worker.destroy();
+                }
+                throw e;
+            }
+            for (Process worker : workers) {
+                worker.waitFor();
+            }
+        }
+
+        System.out.println(basename + ": Time elapsed (sec) = " + (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+}
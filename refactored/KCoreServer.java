@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class KCoreServer {
+    private final Map<String, ResidentGraph> graphs = new ConcurrentHashMap<>();
+    private HttpServer server;
+
+    // A mapped graph and the last core decomposition computed on it
+    private static class ResidentGraph {
+        final String basename;
+        final ImmutableGraph graph;
+        final GraphStatistics stats;
+        volatile CompactCoreArray cores;
+        volatile String engine;
+
+        ResidentGraph(String basename, ImmutableGraph graph, GraphStatistics stats) {
+            this.basename = basename;
+            this.graph = graph;
+            this.stats = stats;
+        }
+    }
+
+    // Thrown for requests that name a missing graph, vertex or parameter
+    private static class BadRequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Start listening on the loopback interface only
+    public void start(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+
+        server.createContext("/graphs", exchange -> handle(exchange, this::listGraphs));
+        server.createContext("/load", exchange -> handle(exchange, this::loadGraph));
+        server.createContext("/unload", exchange -> handle(exchange, this::unloadGraph));
+        server.createContext("/compute", exchange -> handle(exchange, this::computeCores));
+        server.createContext("/core", exchange -> handle(exchange, this::vertexCore));
+        server.createContext("/kcore", exchange -> handle(exchange, this::kCoreMembers));
+        server.createContext("/subgraph", exchange -> handle(exchange, this::subgraphCores));
+
+        server.start();
+        System.out.println("KCoreServer listening on 127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    // Load a graph memory-mapped under the given name, keeping it resident between requests
+    public void load(String name, String basename) throws IOException {
+        long startTime = System.currentTimeMillis();
+        ImmutableGraph graph = ImmutableGraph.loadMapped(basename);
+        graphs.put(name, new ResidentGraph(basename, graph, GraphStatistics.loadOrBuild(basename, graph)));
+        System.out.println("Loaded " + name + " from " + basename + " in "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " sec");
+    }
+
+    private interface Handler {
+        void respond(Map<String, String> params, Writer out) throws Exception;
+    }
+
+    // Helper method to run a handler and map failures to HTTP status codes
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+
+            StringBuilderWriter buffered = new StringBuilderWriter();
+            int status = 200;
+            try {
+                handler.respond(params, buffered);
+            } catch (BadRequestException e) {
+                status = e.status;
+                buffered = new StringBuilderWriter();
+                buffered.write("Error: " + e.getMessage() + "\n");
+            } catch (Exception e) {
+                status = 500;
+                buffered = new StringBuilderWriter();
+                buffered.write("Error: " + e + "\n");
+            }
+
+            byte[] body = buffered.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        } finally {
+            // Errors such as OutOfMemoryError still end the exchange instead of leaving the client waiting
+            exchange.close();
+        }
+    }
+
+    // Helper writer that collects a response so the status can still change on failure
+    private static class StringBuilderWriter extends Writer {
+        private final StringBuilder sb = new StringBuilder();
+
+        public void write(char[] cbuf, int off, int len) {
+            sb.append(cbuf, off, len);
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+
+        public String toString() {
+            return sb.toString();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    private static String require(Map<String, String> params, String key) {
+        String value = params.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new BadRequestException(400, "missing parameter '" + key + "'");
+        }
+        return value;
+    }
+
+    private static int requireInt(Map<String, String> params, String key) {
+        String value = require(params, key);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(400, "parameter '" + key + "' is not an integer: " + value);
+        }
+    }
+
+    private ResidentGraph requireGraph(Map<String, String> params) {
+        String name = require(params, "name");
+        ResidentGraph resident = graphs.get(name);
+        if (resident == null) {
+            throw new BadRequestException(404, "no graph loaded as '" + name + "'");
+        }
+        return resident;
+    }
+
+    private static int requireVertex(ResidentGraph resident, int vertex) {
+        if (vertex < 0 || vertex >= resident.graph.numNodes()) {
+            throw new BadRequestException(404, "vertex " + vertex + " out of range [0, " + resident.graph.numNodes() + ")");
+        }
+        return vertex;
+    }
+
+    // Helper method to run one of the engines on a private copy of a resident graph
+    private static CompactCoreArray runEngine(ImmutableGraph graph, GraphStatistics stats, String engine) {
+        switch (engine) {
+        case "bz":
+            return new KCoreWG_BZ(graph, stats, 1).KCoreCompute();
+        case "m":
+            return new KCoreWG_M(graph, stats).computeKCore();
+        case "m-async":
+            return new KCoreWG_M(graph, stats).computeKCoreAsync();
+        default:
+            throw new BadRequestException(400, "unknown engine '" + engine + "', expected bz, m or m-async");
+        }
+    }
+
+    // Helper method to return the cores of a graph, computing them with BZ on first use
+    private static CompactCoreArray coresOf(ResidentGraph resident) {
+        CompactCoreArray cores = resident.cores;
+        if (cores != null) {
+            return cores;
+        }
+        synchronized (resident) {
+            if (resident.cores == null) {
+                resident.cores = runEngine(resident.graph.copy(), resident.stats, "bz");
+                resident.engine = "bz";
+            }
+            return resident.cores;
+        }
+    }
+
+    private void listGraphs(Map<String, String> params, Writer out) throws IOException {
+        for (Map.Entry<String, ResidentGraph> entry : graphs.entrySet()) {
+            ResidentGraph resident = entry.getValue();
+            out.write(entry.getKey() + "\t" + resident.basename + "\t" + resident.graph.numNodes() + "\t"
+                    + (resident.engine == null ? "-" : resident.engine) + "\n");
+        }
+    }
+
+    private void loadGraph(Map<String, String> params, Writer out) throws IOException {
+        String name = require(params, "name");
+        String basename = require(params, "basename");
+        load(name, basename);
+        out.write("loaded " + name + "\n");
+    }
+
+    private void unloadGraph(Map<String, String> params, Writer out) throws IOException {
+        String name = require(params, "name");
+        if (graphs.remove(name) == null) {
+            throw new BadRequestException(404, "no graph loaded as '" + name + "'");
+        }
+        out.write("unloaded " + name + "\n");
+    }
+
+    private void computeCores(Map<String, String> params, Writer out) throws IOException {
+        ResidentGraph resident = requireGraph(params);
+        String engine = params.getOrDefault("engine", "bz");
+
+        long startTime = System.currentTimeMillis();
+        synchronized (resident) {
+            resident.cores = runEngine(resident.graph.copy(), resident.stats, engine);
+            resident.engine = engine;
+        }
+
+        out.write("engine\tkmax\ttime (sec)\n");
+        out.write(engine + "\t" + resident.cores.max() + "\t" + (System.currentTimeMillis() - startTime) / 1000.0 + "\n");
+    }
+
+    private void vertexCore(Map<String, String> params, Writer out) throws IOException {
+        ResidentGraph resident = requireGraph(params);
+        int vertex = requireVertex(resident, requireInt(params, "vertex"));
+        out.write(vertex + ":" + coresOf(resident).get(vertex) + "\n");
+    }
+
+    private void kCoreMembers(Map<String, String> params, Writer out) throws IOException {
+        ResidentGraph resident = requireGraph(params);
+        int k = requireInt(params, "k");
+        CompactCoreArray cores = coresOf(resident);
+
+        for (int v = 0; v < cores.length(); v++) {
+            if (cores.get(v) >= k) {
+                out.write(v + "\n");
+            }
+        }
+    }
+
+    private void subgraphCores(Map<String, String> params, Writer out) throws IOException {
+        ResidentGraph resident = requireGraph(params);
+        String[] tokens = require(params, "vertices").split(",");
+
+        int[] vertices = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            try {
+                vertices[i] = requireVertex(resident, Integer.parseInt(tokens[i].trim()));
+            } catch (NumberFormatException e) {
+                throw new BadRequestException(400, "not a vertex: " + tokens[i]);
+            }
+        }
+
+        // Local ids of the subgraph follow the sorted, distinct vertices
+        Arrays.sort(vertices);
+        int distinct = 0;
+        for (int i = 0; i < vertices.length; i++) {
+            if (distinct == 0 || vertices[distinct - 1] != vertices[i]) {
+                vertices[distinct++] = vertices[i];
+            }
+        }
+        vertices = Arrays.copyOf(vertices, distinct);
+
+        InducedSubgraph subgraph = InducedSubgraph.of(resident.graph.copy(), vertices);
+        CompactCoreArray cores = runEngine(subgraph, null, params.getOrDefault("engine", "bz"));
+        for (int i = 0; i < cores.length(); i++) {
+            out.write(vertices[i] + ":" + cores.get(i) + "\n");
+        }
+    }
+
+    // Subgraph induced by sorted, distinct vertices, in compressed sparse row form with local ids
+    static class InducedSubgraph extends ImmutableGraph {
+        private final int[] offsets;
+        private final int[] arcs;
+        // Reused by successorArray, as the ImmutableGraph contract allows
+        private int[] buffer = new int[16];
+
+        private InducedSubgraph(int[] offsets, int[] arcs) {
+            this.offsets = offsets;
+            this.arcs = arcs;
+        }
+
+        static InducedSubgraph of(ImmutableGraph graph, int[] vertices) {
+            int[] offsets = new int[vertices.length + 1];
+            int[] arcs = new int[16];
+            int size = 0;
+
+            for (int i = 0; i < vertices.length; i++) {
+                int degree = graph.outdegree(vertices[i]);
+                int[] successors = graph.successorArray(vertices[i]);
+                for (int j = 0; j < degree; j++) {
+                    int local = Arrays.binarySearch(vertices, successors[j]);
+                    if (local < 0) {
+                        continue;
+                    }
+                    if (size == arcs.length) {
+                        arcs = Arrays.copyOf(arcs, 2 * arcs.length);
+                    }
+                    arcs[size++] = local;
+                }
+                offsets[i + 1] = size;
+            }
+
+            return new InducedSubgraph(offsets, Arrays.copyOf(arcs, size));
+        }
+
+        public int numNodes() {
+            return offsets.length - 1;
+        }
+
+        public long numArcs() {
+            return arcs.length;
+        }
+
+        public boolean randomAccess() {
+            return true;
+        }
+
+        public int outdegree(int x) {
+            return offsets[x + 1] - offsets[x];
+        }
+
+        public int[] successorArray(int x) {
+            int degree = outdegree(x);
+            if (buffer.length < degree) {
+                buffer = new int[Math.max(degree, 2 * buffer.length)];
+            }
+            System.arraycopy(arcs, offsets[x], buffer, 0, degree);
+            return buffer;
+        }
+
+        // The arrays are never modified, so copies share them and only get their own successor buffer
+        public ImmutableGraph copy() {
+            return new InducedSubgraph(offsets, arcs);
+        }
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java KCoreServer port [name=basename ...]");
+            System.exit(1);
+        }
+
+        int port = Integer.parseInt(args[0]);
+        KCoreServer kCoreServer = new KCoreServer();
+
+        for (int i = 1; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Expected name=basename, got " + args[i]);
+                System.exit(1);
+            }
+            kCoreServer.load(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+
+        kCoreServer.start(port, Integer.getInteger("num_threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+}
@@ -1,54 +1,78 @@
 import java.io.File;
 import java.io.PrintStream;
 import it.unimi.dsi.webgraph.ImmutableGraph;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 
 public class KCoreWG_BZ {
+    // Below this many vertices per thread the initialization is not worth splitting
+    private static final int MIN_VERTICES_PER_THREAD = 1 << 16;
+
     ImmutableGraph G;
     boolean printprogress = false;
     long E;
     int n;
     int md; // max degree
+    GraphStatistics stats; // persisted degrees, null when the degree passes must run
+    int numThreads; // threads for the degree bin initialization
 
     // Initialization: Load the graph, compute basic graph properties
     public KCoreWG_BZ(String basename) throws Exception {
-        initializeGraph(basename);
-        G = ImmutableGraph.load(basename);
+        this(basename, 1);
+    }
+
+    public KCoreWG_BZ(String basename, int numThreads) throws Exception {
+        this(basename, ImmutableGraph.load(basename), numThreads);
+    }
+
+    private KCoreWG_BZ(String basename, ImmutableGraph graph, int numThreads) {
+        this(graph, GraphStatistics.loadOrBuild(basename, graph), numThreads);
+    }
+
+    // Initialization on a graph that is already loaded, e.g. kept resident by KCoreServer
+    public KCoreWG_BZ(ImmutableGraph graph) {
+        this(graph, null);
+    }
+
+    public KCoreWG_BZ(ImmutableGraph graph, GraphStatistics stats) {
+        this(graph, stats, 1);
+    }
+
+    // Callers that already run several decompositions at once, like KCoreBatch and KCoreServer, should pass 1
+    public KCoreWG_BZ(ImmutableGraph graph, GraphStatistics stats, int numThreads) {
+        G = graph;
+        this.stats = stats;
+        this.numThreads = numThreads;
         n = G.numNodes();
         E = 0;
         md = 0;
         computeGraphProperties();
     }
 
-    // Load the graph using Webgraph library
-    private void initializeGraph(String basename) throws Exception {
-        G = ImmutableGraph.load(basename);
-        n = G.numNodes();
-    }
-
-    // Compute basic graph properties like maximum degree and total edges
+    // Compute basic graph properties like maximum degree and total edges; without statistics they come out of the
+    // degree pass in KCoreCompute
     private void computeGraphProperties() {
-
-        // Use stream and max to find the maximum degree
-        md = IntStream.range(0, n).map(G::outdegree).max().orElse(0);
-
-        // Use stream and sum to calculate the total outdegree
-        E = IntStream.range(0, n).map(G::outdegree).sum();
+        if (stats != null) {
+            md = stats.maxDegree;
+            E = stats.numArcs;
+        }
     }
 
     // Core computation: Compute k-core decomposition
-    public int[] KCoreCompute() {
+    public CompactCoreArray KCoreCompute() {
         int[] vert = initializeIntArray(n);
         int[] pos = initializeIntArray(n);
-        int[] deg = initializeIntArray(n);
-        int[] bin = initializeIntArray(md + 1);
-
-        // Initialize bins for degree distribution
-        initializeDegreeBins(deg, bin);
+        // Degrees shrink into core numbers in place, one byte per vertex for the common case
+        CompactCoreArray deg = new CompactCoreArray(n);
 
-        // Sort vertices by degree using bin-sort
-        sortVerticesByDegree(vert, pos, deg, bin);
+        // Degrees, bin offsets and the vertices sorted by degree, in one parallel counting sort
+        int[] bin = initializeBins(deg, vert, pos);
 
         // Main k-core decomposition algorithm
         long pctDoneLastPrinted = 0;
@@ -57,7 +81,7 @@ public class KCoreWG_BZ {
             int v = vert[i]; // smallest degree vertex
 
             // Rest of the loop content remains unchanged
-            if (deg[v] > 0) {
+            if (deg.get(v) > 0) {
                 updateVerticesAndBins(v, deg, bin, vert, pos);
             }
 
@@ -68,65 +92,164 @@ public class KCoreWG_BZ {
         return deg;
     }
 
-    // Helper method to initialize bins for degree distribution
-    private void initializeDegreeBins(int[] deg, int[] bin) {
-        for (int v = 0; v < n; v++) {
-            int vertexDegree = G.outdegree(v);
-            if (vertexDegree <= md) {
-                bin[vertexDegree]++;
-                deg[v] = vertexDegree;
-            } else {
-                // Handle unexpected degree values (print, log, or handle accordingly)
-                System.err.println("Unexpected degree value: " + vertexDegree);
+    // Helper method to compute degrees, per-thread degree histograms, bin start offsets and the vert/pos scatter.
+    // Without statistics, pos[v] holds the degree of v until the scatter, so no extra per-vertex array is needed.
+    private int[] initializeBins(CompactCoreArray deg, int[] vert, int[] pos) {
+        int numThreads = Math.max(1, Math.min(this.numThreads, n / MIN_VERTICES_PER_THREAD));
+        int[] bounds = new int[numThreads + 1];
+        for (int t = 0; t <= numThreads; t++) {
+            bounds[t] = (int) ((long) n * t / numThreads);
+        }
+
+        // Fused degree pass: every thread decodes its own range on its own copy of the graph. The sidecar histogram
+        // already holds the totals, so with statistics the last range is derived from it instead of counted.
+        int counted = stats != null ? numThreads - 1 : numThreads;
+        int[][] histograms = new int[numThreads][];
+        long[] arcs = new long[numThreads];
+        runInParallel(Arrays.copyOf(bounds, counted + 1), (t, from, to) -> {
+            ImmutableGraph graph = stats == null ? G.copy() : null;
+            int[] histogram = new int[16];
+            long sum = 0;
+            for (int v = from; v < to; v++) {
+                int d;
+                if (stats != null) {
+                    d = stats.degree(v);
+                } else {
+                    d = graph.outdegree(v);
+                    pos[v] = d;
+                }
+                sum += d;
+                if (d >= histogram.length) {
+                    histogram = Arrays.copyOf(histogram, Math.max(d + 1, 2 * histogram.length));
+                }
+                histogram[d]++;
+            }
+            histograms[t] = histogram;
+            arcs[t] = sum;
+        });
+
+        if (stats != null) {
+            int[] last = stats.histogram().clone();
+            for (int t = 0; t < counted; t++) {
+                for (int d = 0; d < Math.min(histograms[t].length, last.length); d++) {
+                    last[d] -= histograms[t][d];
+                }
+            }
+            histograms[numThreads - 1] = last;
+        } else {
+            md = 0;
+            E = 0;
+            for (int t = 0; t < numThreads; t++) {
+                for (int d = histograms[t].length - 1; d > md; d--) {
+                    if (histograms[t][d] > 0) {
+                        md = d;
+                        break;
+                    }
+                }
+                E += arcs[t];
+            }
+        }
+
+        // Prefix sums: bucket d starts at bin[d], and within it each thread's vertices follow those of earlier threads
+        int[] bin = initializeIntArray(md + 1);
+        int start = 0;
+        for (int d = 0; d <= md; d++) {
+            bin[d] = start;
+            for (int t = 0; t < numThreads; t++) {
+                if (d < histograms[t].length) {
+                    int count = histograms[t][d];
+                    histograms[t][d] = start;
+                    start += count;
+                }
             }
         }
+
+        // Scatter: each thread owns disjoint slots of every bucket, so vert and pos need no synchronization
+        runInParallel(bounds, (t, from, to) -> {
+            int[] next = histograms[t];
+            for (int v = from; v < to; v++) {
+                int d = stats != null ? stats.degree(v) : pos[v];
+                int p = next[d]++;
+                vert[p] = v;
+                pos[v] = p;
+                if (d < CompactCoreArray.ESCAPE) {
+                    deg.set(v, d);
+                }
+            }
+        });
+
+        // Large degrees go through the overflow table, which is not thread-safe; they are the tail of vert
+        for (int d = CompactCoreArray.ESCAPE; d <= md; d++) {
+            int end = d < md ? bin[d + 1] : n;
+            for (int p = bin[d]; p < end; p++) {
+                deg.set(vert[p], d);
+            }
+        }
+
+        return bin;
     }
 
-    // Helper method to initialize an integer array
-    private int[] initializeIntArray(int size) {
-        return new int[size];
+    private interface RangeTask {
+        void run(int thread, int from, int to);
     }
 
-    // Helper method to sort vertices by degree using bin-sort
-    private void sortVerticesByDegree(int[] vert, int[] pos, int[] deg, int[] bin) {
-        // Determine the correct size for the count array
-        int maxDegree = Arrays.stream(deg).max().orElse(0);
-        int[] count = new int[maxDegree + 1];
-
-        // Use stream and forEach to update count array
-        IntStream.range(0, n).forEach(v -> {
-            int degree = deg[v];
-            if (degree <= maxDegree) {
-                pos[v] = count[degree];
-                vert[pos[v]] = v;
-                count[degree]++;
-            } else {
-                System.err.println("Degree out of bounds: " + degree);
+    // Helper method to run a task on each vertex range, inline when there is only one
+    private static void runInParallel(int[] bounds, RangeTask task) {
+        int numThreads = bounds.length - 1;
+        if (numThreads == 0) {
+            return;
+        }
+        if (numThreads == 1) {
+            task.run(0, bounds[0], bounds[1]);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> task.run(thread, bounds[thread], bounds[thread + 1])));
             }
-        });
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while initializing degree bins", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Degree bin initialization failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
 
+    // Helper method to initialize an integer array
+    private int[] initializeIntArray(int size) {
+        return new int[size];
     }
 
     // Helper method to update vertices and bins during k-core computation
-    private void updateVerticesAndBins(int v, int[] deg, int[] bin, int[] vert, int[] pos) {
+    private void updateVerticesAndBins(int v, CompactCoreArray deg, int[] bin, int[] vert, int[] pos) {
         int v_deg = G.outdegree(v);
         int[] N_v = G.successorArray(v);
 
         // Use IntStream.range to iterate over the range of v_deg
+        int deg_v = deg.get(v);
         IntStream.range(0, v_deg).forEach(j -> {
             int u = N_v[j];
+            int deg_u = deg.get(u);
 
-            if (deg[u] > deg[v]) {
-                swapVerticesAndBins(u, v, deg, bin, vert, pos);
-                bin[deg[u]]++;
-                deg[u]--;
+            if (deg_u > deg_v) {
+                swapVerticesAndBins(u, v, deg_u, bin, vert, pos);
+                bin[deg_u]++;
+                deg.decrement(u);
             }
         });
     }
 
     // Helper method to swap vertices and bins during k-core computation
-    private void swapVerticesAndBins(int u, int v, int[] deg, int[] bin, int[] vert, int[] pos) {
-        int du = deg[u];
+    private void swapVerticesAndBins(int u, int v, int du, int[] bin, int[] vert, int[] pos) {
         int pu = pos[u];
         int pw = bin[du];
 
@@ -195,19 +318,21 @@ public class KCoreWG_BZ {
             String basename = args[0];
             System.out.println("Starting " + basename);
 
-            KCoreWG_BZ kc = new KCoreWG_BZ(basename);
+            KCoreWG_BZ kc = new KCoreWG_BZ(basename,
+                    Integer.getInteger("num_threads", Runtime.getRuntime().availableProcessors()));
 
             // Storing the core value for each node in a file.
             try (PrintStream ps = new PrintStream(new File(basename + ".cores"))) {
-                int[] res = kc.KCoreCompute();
+                CompactCoreArray res = kc.KCoreCompute();
 
                 int kmax = -1;
                 double sum = 0;
                 int cnt = 0;
 
                 // Loop using enhanced for loop
-                for (int i : res) {
-                    printCoreInfo(ps, cnt, i);
+                for (int v = 0; v < res.length(); v++) {
+                    int i = res.get(v);
+                    printCoreInfo(ps, v, i);
 
                     if (i > kmax)
                         kmax = i;
@@ -1,36 +1,95 @@
 import java.io.File;
 import java.io.PrintStream;
+import java.util.Arrays;
 import it.unimi.dsi.webgraph.ImmutableGraph;
 
 public class KCoreWG_M {
     private ImmutableGraph graph;
     private int numNodes;
-    private int numEdges;
+    private long numEdges;
     private int maxDegree;
-    private int[] coreNumbers;
+    private CompactCoreArray coreNumbers;
     private boolean[] isScheduled;
     private boolean showProgress = false;
     private int iterationCount = 0;
     private boolean hasChanged = false;
+    private long edgesScanned = 0;
+    private long nodeEvaluations = 0;
+    private SuccessorPrefetcher prefetcher;
+    private int[] frontier;
+    private GraphStatistics stats;
+    private AdjacencyCache hubCache;
+    private WarmStart warmStart;
 
     public KCoreWG_M(String filename) throws Exception {
-        loadGraph(filename);
-        initializeGraphInfo();
+        this(filename, ImmutableGraph.loadMapped(filename));
+    }
+
+    private KCoreWG_M(String filename, ImmutableGraph graph) {
+        this(graph, GraphStatistics.loadOrBuild(filename, graph));
     }
 
-    private void loadGraph(String filename) throws Exception {
-        this.graph = ImmutableGraph.loadMapped(filename);
+    public KCoreWG_M(ImmutableGraph graph) {
+        this(graph, null);
+    }
+
+    public KCoreWG_M(ImmutableGraph graph, GraphStatistics stats) {
+        this.graph = graph;
+        this.stats = stats;
+        initializeGraphInfo();
     }
 
     private void initializeGraphInfo() {
         numNodes = graph.numNodes();
-        coreNumbers = new int[numNodes];
+        coreNumbers = new CompactCoreArray(numNodes);
         isScheduled = new boolean[numNodes];
         numEdges = calculateNumEdgesAndMaxDegree();
+        initializePrefetcher();
+        initializeHubCache();
     }
 
-    private int calculateNumEdgesAndMaxDegree() {
-        int totalEdges = 0;
+    private void initializeHubCache() {
+        int cacheMegabytes = Integer.getInteger("hub_cache_mb", 0);
+        if (cacheMegabytes > 0) {
+            hubCache = new AdjacencyCache(numNodes, (long) cacheMegabytes << 20,
+                    Integer.getInteger("hub_cache_min_degree", 1024), Boolean.getBoolean("hub_cache_packed"));
+        }
+    }
+
+    private int[] successorsOf(int node, int nodeDegree) {
+        if (hubCache == null || !hubCache.isCandidate(nodeDegree)) {
+            return graph.successorArray(node);
+        }
+
+        int[] neighbors = hubCache.get(node);
+        if (neighbors == null) {
+            neighbors = graph.successorArray(node);
+            hubCache.offer(node, nodeDegree, neighbors);
+        }
+        return neighbors;
+    }
+
+    // Start from earlier bounds instead of degrees; they must not be below the true cores for the result to be exact
+    public void setWarmStart(WarmStart warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    private void initializePrefetcher() {
+        int prefetchThreads = Integer.getInteger("prefetch_threads", 0);
+        if (prefetchThreads > 0) {
+            prefetcher = new SuccessorPrefetcher(graph, prefetchThreads, Integer.getInteger("prefetch_ring", 256));
+            frontier = new int[numNodes];
+        }
+    }
+
+    private long calculateNumEdgesAndMaxDegree() {
+        if (stats != null) {
+            maxDegree = stats.maxDegree;
+            Arrays.fill(isScheduled, true);
+            return stats.numArcs / 2;
+        }
+
+        long totalEdges = 0;
         for (int node = 0; node < numNodes; node++) {
             int degree = graph.outdegree(node);
             totalEdges += degree;
@@ -62,7 +121,7 @@ public class KCoreWG_M {
 
     private void initializeCoreNumberOnFirstIteration(int node) {
         int nodeDegree = graph.outdegree(node);
-        coreNumbers[node] = nodeDegree;
+        coreNumbers.set(node, nodeDegree);
         markNodeAsScheduled(node);
         setHasChanged(true);
     }
@@ -81,27 +140,34 @@ public class KCoreWG_M {
         int nodeDegree;
 
         nodeDegree = graph.outdegree(node);
-        int[] neighbors = graph.successorArray(node);
+        int[] neighbors = successorsOf(node, nodeDegree);
+        updateCoreOnSubsequentIterations(node, nodeDegree, neighbors);
+    }
+
+    private void updateCoreOnSubsequentIterations(int node, int nodeDegree, int[] neighbors) {
+        edgesScanned += nodeDegree;
         int localEstimate = computeEstimatedCore(node, nodeDegree, neighbors);
 
-        if (localEstimate < coreNumbers[node]) {
-            coreNumbers[node] = localEstimate;
+        if (localEstimate < coreNumbers.get(node)) {
+            coreNumbers.set(node, localEstimate);
             setHasChanged(true);
-            updateScheduledNodes(node, neighbors);
+            updateScheduledNodes(node, nodeDegree, neighbors);
         }
     }
 
     private int computeEstimatedCore(int currentNode, int currentDegree, int[] adjacentNodes) {
-        int[] coreFrequency = calculateCoreFrequency(currentNode, adjacentNodes);
+        int[] coreFrequency = calculateCoreFrequency(currentNode, currentDegree, adjacentNodes);
         return calculateLocalEstimate(currentNode, coreFrequency);
     }
 
-    private int[] calculateCoreFrequency(int currentNode, int[] adjacentNodes) {
-        int maxCoreValue = coreNumbers[currentNode] + 1;
+    private int[] calculateCoreFrequency(int currentNode, int currentDegree, int[] adjacentNodes) {
+        int maxCoreValue = coreNumbers.get(currentNode) + 1;
         int[] coreFrequency = new int[maxCoreValue];
 
-        for (int neighborNode : adjacentNodes) {
-            int minCoreValue = Math.min(coreNumbers[currentNode], coreNumbers[neighborNode]);
+        // Successor arrays may be longer than the degree, only the first currentDegree entries are valid
+        for (int i = 0; i < currentDegree; i++) {
+            int neighborNode = adjacentNodes[i];
+            int minCoreValue = Math.min(coreNumbers.get(currentNode), coreNumbers.get(neighborNode));
             if (minCoreValue < maxCoreValue) {
                 coreFrequency[minCoreValue]++;
             }
@@ -111,7 +177,7 @@ public class KCoreWG_M {
     }
 
     private int calculateLocalEstimate(int currentNode, int[] frequencyArray) {
-        int currentNodeCore = coreNumbers[currentNode];
+        int currentNodeCore = coreNumbers.get(currentNode);
 
         for (int core = currentNodeCore; core >= 2; core--) {
             int cumulativeFrequency = calculateCumulativeFrequency(core, frequencyArray);
@@ -121,11 +187,12 @@ public class KCoreWG_M {
             }
         }
 
-        return currentNodeCore;
+        // Any node with a neighbour is in the 1-core; only isolated nodes keep a core of 0
+        return Math.min(currentNodeCore, 1);
     }
 
     private int calculateUpperBound(int node, int nodeDegree, int[] neighbors) {
-        int[] coreFrequency = calculateCoreFrequency(node, neighbors);
+        int[] coreFrequency = calculateCoreFrequency(node, nodeDegree, neighbors);
         return determineUpperBound(node, coreFrequency);
     }
 
@@ -134,7 +201,7 @@ public class KCoreWG_M {
     }
 
     private int determineUpperBound(int node, int[] coreFrequency, int nodeDegree) {
-        int currentNodeCore = coreNumbers[node];
+        int currentNodeCore = coreNumbers.get(node);
 
         for (int core = currentNodeCore; core >= 2; core--) {
             int cumulative = calculateCumulativeFrequency(core, coreFrequency);
@@ -157,48 +224,225 @@ public class KCoreWG_M {
         return cumulative;
     }
 
-    private void updateScheduledNodes(int node, int[] neighbors) {
-        for (int neighborNode : neighbors) {
-            if (coreNumbers[node] <= coreNumbers[neighborNode]) {
+    private void updateScheduledNodes(int node, int nodeDegree, int[] neighbors) {
+        for (int i = 0; i < nodeDegree; i++) {
+            int neighborNode = neighbors[i];
+            if (coreNumbers.get(node) <= coreNumbers.get(neighborNode)) {
                 scheduleNeighborNode(neighborNode);
             }
         }
     }
 
     private void scheduleNeighborNode(int neighborNode) {
-        if (neighborNode < coreNumbers.length) {
+        if (neighborNode < coreNumbers.length()) {
             isScheduled[neighborNode] = true;
         }
     }
 
-    public int[] computeKCore() {
+    public CompactCoreArray computeKCore() {
         int maxIterations = numNodes;
         boolean isConverged = false;
 
-        while (iterationCount < maxIterations && !isConverged) {
-            System.out.print("Iteration " + iterationCount);
+        try {
+            while (iterationCount < maxIterations && !isConverged) {
+                System.out.print("Iteration " + iterationCount);
+
+                int scheduledCount = 0;
+                boolean[] currentScheduled = isScheduled.clone();
+                resetIsScheduledArray();
+
+                if (warmStart != null && iterationCount == 0) {
+                    scheduledCount = initializeCoreNumbersFromWarmStart();
+                } else if (stats != null && iterationCount == 0) {
+                    scheduledCount = initializeCoreNumbersFromStatistics();
+                } else if (prefetcher != null && iterationCount > 0) {
+                    scheduledCount = updateFrontierWithPrefetch(currentScheduled);
+                } else {
+                    for (int node = 0; node < numNodes; node++) {
+                        if (currentScheduled[node]) {
+                            scheduledCount++;
+                            updateCoreNumber(node);
+                        }
+                    }
+                }
+
+                displayScheduledNodesPercentage(scheduledCount);
+                if (iterationCount > 0) {
+                    // Iteration 0 only seeds estimates, as the async schedule does before its sweep
+                    nodeEvaluations += scheduledCount;
+                }
+                iterationCount++;
+
+                isConverged = !hasChanged;
+                hasChanged = false;
+            }
+        } finally {
+            if (prefetcher != null) {
+                // The decoder threads would otherwise stay parked and keep the ring and graph copies alive
+                prefetcher.close();
+            }
+        }
+
+        return coreNumbers;
+    }
+
+    private int initializeCoreNumbersFromStatistics() {
+        // Same effect as initializeCoreNumberOnFirstIteration on every node, without decoding degrees
+        stats.copyDegreesInto(coreNumbers);
+        Arrays.fill(isScheduled, true);
+        setHasChanged(true);
+        return numNodes;
+    }
+
+    private int initializeCoreNumbersFromWarmStart() {
+        seedCoreNumbers();
+
+        int violated = 0;
+        for (int node = 0; node < numNodes; node++) {
+            if (isBoundViolated(node)) {
+                markNodeAsScheduled(node);
+                violated++;
+            }
+        }
+
+        // With no violated bound the seeds already are the cores and the next iteration has nothing to do
+        setHasChanged(violated > 0);
+        System.out.print("\t" + violated + " seeded bounds violated");
+        return numNodes;
+    }
+
+    // Helper method to set every estimate from the warm start, clamped to the current degree
+    private void seedCoreNumbers() {
+        for (int node = 0; node < numNodes; node++) {
+            int nodeDegree = stats != null ? stats.degree(node) : graph.outdegree(node);
+            coreNumbers.set(node, warmStart.seed(node, nodeDegree));
+        }
+    }
+
+    // Helper method to check whether fewer neighbours than a node's estimate support it, the only case its estimate drops
+    private boolean isBoundViolated(int node) {
+        int nodeCore = coreNumbers.get(node);
+        if (nodeCore == 0) {
+            return false;
+        }
+
+        int nodeDegree = graph.outdegree(node);
+        int[] neighbors = successorsOf(node, nodeDegree);
+        edgesScanned += nodeDegree;
 
-            int scheduledCount = 0;
-            boolean[] currentScheduled = isScheduled.clone();
-            resetIsScheduledArray();
+        int support = 0;
+        for (int i = 0; i < nodeDegree; i++) {
+            if (coreNumbers.get(neighbors[i]) >= nodeCore && ++support >= nodeCore) {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    private int updateFrontierWithPrefetch(boolean[] currentScheduled) {
+        int frontierSize = 0;
+        for (int node = 0; node < numNodes; node++) {
+            if (currentScheduled[node]) {
+                frontier[frontierSize++] = node;
+            }
+        }
+
+        // Decoder threads run ahead along the frontier while this thread updates estimates
+        prefetcher.start(frontier, frontierSize);
+        for (int position = 0; position < frontierSize; position++) {
+            int slot = prefetcher.take(position);
+            updateCoreOnSubsequentIterations(frontier[position], prefetcher.degree(slot), prefetcher.successors(slot));
+            prefetcher.release(position);
+        }
+
+        try {
+            prefetcher.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for successor decoders", e);
+        }
+
+        return frontierSize;
+    }
+
+    public CompactCoreArray computeKCoreAsync() {
+        int[] bucketHead = new int[maxDegree + 1];
+        int[] nextInBucket = new int[numNodes];
+        Arrays.fill(bucketHead, -1);
+
+        if (warmStart != null) {
+            seedCoreNumbers();
+        } else if (stats != null) {
+            stats.copyDegreesInto(coreNumbers);
+        } else {
             for (int node = 0; node < numNodes; node++) {
-                if (currentScheduled[node]) {
-                    scheduledCount++;
-                    updateCoreNumber(node);
-                }
+                coreNumbers.set(node, graph.outdegree(node));
+            }
+        }
+        resetIsScheduledArray();
+        for (int node = 0; node < numNodes; node++) {
+            // A warm start only queues the nodes whose seeded bound is not yet supported by their neighbours
+            if (warmStart == null || isBoundViolated(node)) {
+                enqueueNode(node, bucketHead, nextInBucket);
+            }
+        }
+
+        int currentBucket = 0;
+
+        while (true) {
+            while (currentBucket <= maxDegree && bucketHead[currentBucket] == -1) {
+                currentBucket++;
+            }
+            if (currentBucket > maxDegree) {
+                break;
             }
 
-            displayScheduledNodesPercentage(scheduledCount);
-            iterationCount++;
+            int node = bucketHead[currentBucket];
+            bucketHead[currentBucket] = nextInBucket[node];
+            isScheduled[node] = false;
+            nodeEvaluations++;
 
-            isConverged = !hasChanged;
-            hasChanged = false;
+            int lowestRequeued = updateCoreInPlace(node, bucketHead, nextInBucket);
+            if (lowestRequeued < currentBucket) {
+                // A neighbour fell behind the sweep, resume from its bucket
+                currentBucket = lowestRequeued;
+            }
         }
 
+        System.out.println("Asynchronous sweep finished after " + nodeEvaluations + " node evaluations.");
         return coreNumbers;
     }
 
+    private int updateCoreInPlace(int node, int[] bucketHead, int[] nextInBucket) {
+        int nodeDegree = graph.outdegree(node);
+        int[] neighbors = successorsOf(node, nodeDegree);
+        edgesScanned += nodeDegree;
+        int localEstimate = computeEstimatedCore(node, nodeDegree, neighbors);
+        int lowestRequeued = Integer.MAX_VALUE;
+
+        if (localEstimate < coreNumbers.get(node)) {
+            coreNumbers.set(node, localEstimate);
+            for (int i = 0; i < nodeDegree; i++) {
+                int neighborNode = neighbors[i];
+                // Only neighbours above the new estimate see a different min(core_u, core_v)
+                if (coreNumbers.get(node) < coreNumbers.get(neighborNode) && !isScheduled[neighborNode]) {
+                    enqueueNode(neighborNode, bucketHead, nextInBucket);
+                    lowestRequeued = Math.min(lowestRequeued, coreNumbers.get(neighborNode));
+                }
+            }
+        }
+
+        return lowestRequeued;
+    }
+
+    private void enqueueNode(int node, int[] bucketHead, int[] nextInBucket) {
+        // Estimates only drop when a node is evaluated, so its bucket stays valid while queued
+        int bucket = coreNumbers.get(node);
+        nextInBucket[node] = bucketHead[bucket];
+        bucketHead[bucket] = node;
+        isScheduled[node] = true;
+    }
+
     private void resetIsScheduledArray() {
         for (int i = 0; i < numNodes; i++) {
             isScheduled[i] = false;
@@ -212,28 +456,40 @@ public class KCoreWG_M {
 
     public static void main(String[] args) {
         long startTime = System.currentTimeMillis();
-        if(args.length != 1) {
-			System.err.println("Usage: java KCoreWG_M basename");
+        if(args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("async") && !args[1].equals("sync"))) {
+			System.err.println("Usage: java KCoreWG_M basename [sync|async]");
 			System.exit(1);
 		}
 		
 		String basename = args[0];
+		boolean asynchronous = args.length == 2 && args[1].equals("async");
 
         System.out.println("Starting " + basename);
         KCoreWG_M kCore = null;
         PrintStream ps = null;
-        int[] result = null;
+        CompactCoreArray result = null;
 
         try {
             kCore = new KCoreWG_M(basename);
+            WarmStart warmStart = WarmStart.fromProperties(kCore.numNodes);
+            if (warmStart != null) {
+                System.out.println("Warm start from " + System.getProperty("warm_start") + ": " + warmStart.knownCount()
+                        + " vertices seeded");
+                kCore.setWarmStart(warmStart);
+            }
             ps = new PrintStream(new File(basename + ".cores"));
-            result = kCore.computeKCore();
+            result = asynchronous ? kCore.computeKCoreAsync() : kCore.computeKCore();
 
             int maxCore = computeMaxCore(result);
 
             double averageCore = computeAverageCore(result);
 
             printCoreStatistics(result, kCore.numEdges, kCore.maxDegree, maxCore, averageCore, ps);
+            printWorkStatistics(asynchronous ? "-" : Integer.toString(kCore.iterationCount), kCore.nodeEvaluations,
+                    kCore.numNodes, kCore.edgesScanned);
+            if (kCore.hubCache != null) {
+                kCore.hubCache.printStatistics();
+            }
 
             System.out
                     .println(basename + ": Time elapsed (sec) = " + (System.currentTimeMillis() - startTime) / 1000.0);
@@ -242,9 +498,10 @@ public class KCoreWG_M {
         }
     }
 
-    private static int computeMaxCore(int[] coreArray) {
+    private static int computeMaxCore(CompactCoreArray coreArray) {
         int max = -1;
-        for (int core : coreArray) {
+        for (int i = 0; i < coreArray.length(); i++) {
+            int core = coreArray.get(i);
             if (core > max) {
                 max = core;
             }
@@ -252,10 +509,11 @@ public class KCoreWG_M {
         return max;
     }
 
-    private static double computeAverageCore(int[] coreArray) {
+    private static double computeAverageCore(CompactCoreArray coreArray) {
         double sum = 0;
         int count = 0;
-        for (int core : coreArray) {
+        for (int i = 0; i < coreArray.length(); i++) {
+            int core = coreArray.get(i);
             sum += core;
             if (core > 0) {
                 count++;
@@ -264,7 +522,7 @@ public class KCoreWG_M {
         return count > 0 ? sum / count : 0;
     }
 
-    private static void printCoreStatistics(int[] result, int numEdges, int maxDegree, int maxCore, double averageCore,
+    private static void printCoreStatistics(CompactCoreArray result, long numEdges, int maxDegree, int maxCore, double averageCore,
             PrintStream ps) {
         double sumCores = calculateSumCores(result, ps);
         int countNodes = countPositiveNodes(result);
@@ -274,29 +532,35 @@ public class KCoreWG_M {
                 countNodes, (numEdges / 2), maxDegree, maxCore, averageCore));
     }
 
-    private static double calculateSumCores(int[] result, PrintStream ps) {
+    // Async has no iteration barrier, so node evaluations (also per node) are the measure comparable across schedules
+    private static void printWorkStatistics(String iterations, long nodeEvaluations, int numNodes, long edgesScanned) {
+        System.out.println(String.format("Iterations\tNode Evaluations\tEvaluations per Node\tEdges Scanned\n%s\t%d\t%.3f\t%d",
+                iterations, nodeEvaluations, numNodes > 0 ? (double) nodeEvaluations / numNodes : 0.0, edgesScanned));
+    }
+
+    private static double calculateSumCores(CompactCoreArray result, PrintStream ps) {
         double sum = 0;
-        for (int i = 0; i < result.length; i++) {
-            sum += result[i];
+        for (int i = 0; i < result.length(); i++) {
+            sum += result.get(i);
         }
         printResultValues(result, ps);
         return sum;
     }
 
-    private static void printResultValues(int[] result, PrintStream ps) {
+    private static void printResultValues(CompactCoreArray result, PrintStream ps) {
         StringBuilder stringBuilder = new StringBuilder();
 
-        for (int i = 0; i < result.length; i++) {
-            stringBuilder.append(i).append(":").append(result[i]).append(" \n");
+        for (int i = 0; i < result.length(); i++) {
+            stringBuilder.append(i).append(":").append(result.get(i)).append(" \n");
         }
 
         ps.print(stringBuilder.toString());
     }
 
-    private static int countPositiveNodes(int[] result) {
+    private static int countPositiveNodes(CompactCoreArray result) {
         int count = 0;
-        for (int i = 0; i < result.length; i++) {
-            if (result[i] > 0) {
+        for (int i = 0; i < result.length(); i++) {
+            if (result.get(i) > 0) {
                 count++;
             }
         }
@@ -0,0 +1,386 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import it.unimi.dsi.webgraph.ImmutableGraph;
+
+public class KTrussWG {
+    private static final int CHUNK_SIZE = 1024;
+
+    ImmutableGraph G;
+    int n;
+    int m; // arcs, both directions of every edge
+    int minTruss;
+    CompactCoreArray cores;
+
+    // Per-arc state, indexed by the position of the arc in the successor lists of the graph
+    int[] degree;
+    int[] arcStart; // arcs of v are arcStart[v] .. arcStart[v] + degree[v] - 1
+    int[] target; // the vertex each arc reaches, so nothing is decoded again after indexing
+    int[] twin; // the opposite arc of the same edge
+    AtomicIntegerArray support; // triangle support, then the peeling key, of the arc from the smaller endpoint
+
+    // Oriented lists, only while counting: the higher-ranked active neighbours of each vertex, in id order, with the
+    // position of the arc that reaches them
+    int[] upStart;
+    int[] upTarget;
+    int[] upArc;
+
+    int numEdges;
+    BitSet removed;
+
+    // Only vertices in the (minTruss - 1)-core can have edges in the minTruss-truss
+    public KTrussWG(ImmutableGraph G, CompactCoreArray cores, int minTruss) {
+        this.G = G;
+        this.cores = cores;
+        this.minTruss = minTruss;
+        n = G.numNodes();
+        indexArcs();
+    }
+
+    private boolean isActive(int v) {
+        return cores.get(v) >= minTruss - 1;
+    }
+
+    // Helper method to lay out arc offsets, record arc targets and pair every arc with its twin in one pass over the
+    // symmetric graph
+    private void indexArcs() {
+        degree = new int[n];
+        arcStart = new int[n + 1];
+        long total = 0;
+        for (int v = 0; v < n; v++) {
+            degree[v] = G.outdegree(v);
+            arcStart[v] = (int) total;
+            total += degree[v];
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("KTrussWG indexes arcs with ints, the graph has more than 2^31 arcs");
+            }
+        }
+        m = (int) total;
+        arcStart[n] = m;
+
+        // cursor[v] is the position in v's list of its next larger neighbour still waiting for its twin
+        int[] cursor = new int[n];
+        target = new int[m];
+        twin = new int[m];
+        for (int u = 0; u < n; u++) {
+            int[] successors = G.successorArray(u);
+            int firstAbove = degree[u];
+            for (int j = 0; j < degree[u]; j++) {
+                int v = successors[j];
+                int a = arcStart[u] + j;
+                target[a] = v;
+                if (v < u) {
+                    if (cursor[v] >= degree[v] || target[arcStart[v] + cursor[v]] != u) {
+                        throw new IllegalArgumentException("Graph is not symmetric: no arc " + v + " -> " + u);
+                    }
+                    int b = arcStart[v] + cursor[v]++;
+                    twin[a] = b;
+                    twin[b] = a;
+                } else if (v == u) {
+                    twin[a] = a;
+                } else if (firstAbove == degree[u]) {
+                    firstAbove = j;
+                }
+            }
+            cursor[u] = firstAbove;
+        }
+    }
+
+    // Helper method to pick the arc that carries the state of an edge, the one leaving the smaller endpoint
+    private int canonical(int source, int target, int arc) {
+        return source < target ? arc : twin[arc];
+    }
+
+    // Order by degree, then id, so each triangle is found once from its lowest-ranked vertex
+    private boolean ranksAbove(int x, int y) {
+        return degree[x] > degree[y] || (degree[x] == degree[y] && x > y);
+    }
+
+    // Count the triangles on every edge in parallel, intersecting oriented lists so a hub only meets its few
+    // higher-ranked neighbours instead of being merged in full for every one of its edges
+    public void countSupport(int numThreads) throws Exception {
+        orientArcs();
+        support = new AtomicIntegerArray(m);
+        AtomicInteger nextChunk = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                futures.add(executor.submit(() -> {
+                    int start;
+                    while ((start = nextChunk.getAndAdd(CHUNK_SIZE)) < n) {
+                        for (int u = start; u < Math.min(n, start + CHUNK_SIZE); u++) {
+                            countTrianglesFrom(u);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            upStart = null;
+            upTarget = null;
+            upArc = null;
+        }
+    }
+
+    // Helper method to orient every edge between active vertices towards its higher-ranked endpoint, in one pass
+    private void orientArcs() {
+        upStart = new int[n + 1];
+        upTarget = new int[m / 2];
+        upArc = new int[m / 2];
+        int size = 0;
+        for (int u = 0; u < n; u++) {
+            upStart[u] = size;
+            if (!isActive(u)) {
+                continue;
+            }
+            for (int a = arcStart[u]; a < arcStart[u + 1]; a++) {
+                int v = target[a];
+                if (isActive(v) && ranksAbove(v, u)) {
+                    upTarget[size] = v;
+                    upArc[size++] = a;
+                }
+            }
+        }
+        upStart[n] = size;
+    }
+
+    // Each triangle is found once, from its lowest-ranked vertex u, as a w above both u and v
+    private void countTrianglesFrom(int u) {
+        int endU = upStart[u + 1];
+        for (int p = upStart[u]; p < endU; p++) {
+            int v = upTarget[p];
+            int i = upStart[u];
+            int j = upStart[v];
+            int endV = upStart[v + 1];
+            while (i < endU && j < endV) {
+                if (upTarget[i] < upTarget[j]) {
+                    i++;
+                } else if (upTarget[i] > upTarget[j]) {
+                    j++;
+                } else {
+                    int w = upTarget[i];
+                    support.incrementAndGet(canonical(u, v, upArc[p]));
+                    support.incrementAndGet(canonical(u, w, upArc[i]));
+                    support.incrementAndGet(canonical(v, w, upArc[j]));
+                    i++;
+                    j++;
+                }
+            }
+        }
+    }
+
+    // Peel edges in order of support with a BZ bin/pos/vert queue; afterwards support holds truss - 2 per edge
+    public int peel() {
+        int maxKey = 0;
+        numEdges = 0;
+        for (int u = 0; u < n; u++) {
+            if (!isActive(u)) {
+                continue;
+            }
+            for (int a = arcStart[u]; a < arcStart[u + 1]; a++) {
+                int v = target[a];
+                if (v > u && isActive(v)) {
+                    maxKey = Math.max(maxKey, support.get(a));
+                    numEdges++;
+                }
+            }
+        }
+
+        int[] bin = new int[maxKey + 1];
+        int[] vert = new int[numEdges];
+        int[] pos = new int[m];
+        forEachEdge((u, a) -> bin[support.get(a)]++);
+        int start = 0;
+        for (int k = 0; k <= maxKey; k++) {
+            int count = bin[k];
+            bin[k] = start;
+            start += count;
+        }
+        forEachEdge((u, a) -> {
+            int key = support.get(a);
+            pos[a] = bin[key];
+            vert[pos[a]] = a;
+            bin[key]++;
+        });
+        for (int k = maxKey; k > 0; k--) {
+            bin[k] = bin[k - 1];
+        }
+        bin[0] = 0;
+
+        removed = new BitSet(m);
+        int maxLevel = 0;
+        for (int i = 0; i < numEdges; i++) {
+            int a = vert[i];
+            int level = support.get(a);
+            maxLevel = Math.max(maxLevel, level);
+            removed.set(a);
+
+            int u = sourceOf(a);
+            int v = target[a];
+
+            // Walk the endpoint with fewer neighbours and binary-search the other, so hubs are never scanned in full
+            int small = degree[u] <= degree[v] ? u : v;
+            int large = small == u ? v : u;
+            for (int x = arcStart[small]; x < arcStart[small + 1]; x++) {
+                int w = target[x];
+                if (w == small || w == large || !isActive(w)) {
+                    continue;
+                }
+                int y = Arrays.binarySearch(target, arcStart[large], arcStart[large + 1], w);
+                if (y < 0) {
+                    continue;
+                }
+
+                int e1 = canonical(small, w, x);
+                int e2 = canonical(large, w, y);
+                if (!removed.get(e1) && !removed.get(e2)) {
+                    decrementAbove(e1, level, bin, vert, pos);
+                    decrementAbove(e2, level, bin, vert, pos);
+                }
+            }
+        }
+
+        return maxLevel + 2;
+    }
+
+    // Helper method to move an edge one bucket down, swapping it with the first edge of its bucket as BZ does
+    private void decrementAbove(int e, int level, int[] bin, int[] vert, int[] pos) {
+        int key = support.get(e);
+        if (key <= level) {
+            return;
+        }
+
+        int pe = pos[e];
+        int first = bin[key];
+        int f = vert[first];
+        if (f != e) {
+            vert[pe] = f;
+            pos[f] = pe;
+            vert[first] = e;
+            pos[e] = first;
+        }
+        bin[key]++;
+        support.lazySet(e, key - 1);
+    }
+
+    // Helper method to find the vertex an arc leaves, the last one whose arcs start at or before it; vertices
+    // without arcs share their start with the next vertex, so taking the last one skips them
+    private int sourceOf(int arc) {
+        int low = 0;
+        int high = n - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (arcStart[mid] <= arc) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private interface EdgeVisitor {
+        void visit(int u, int arc);
+    }
+
+    // Helper method to visit the canonical arc of every edge between two active vertices
+    private void forEachEdge(EdgeVisitor visitor) {
+        for (int u = 0; u < n; u++) {
+            if (!isActive(u)) {
+                continue;
+            }
+            for (int a = arcStart[u]; a < arcStart[u + 1]; a++) {
+                int v = target[a];
+                if (v > u && isActive(v)) {
+                    visitor.visit(u, a);
+                }
+            }
+        }
+    }
+
+    // Truss number of the edge u-v, or 0 when it was pruned
+    public int truss(int u, int v) {
+        int lo = Math.min(u, v);
+        int hi = Math.max(u, v);
+        if (!isActive(lo) || !isActive(hi)) {
+            return 0;
+        }
+
+        int a = Arrays.binarySearch(target, arcStart[lo], arcStart[lo + 1], hi);
+        return a >= 0 ? support.get(a) + 2 : 0;
+    }
+
+    // Write "u v truss" for every edge in the minTruss-truss and print the number of edges per truss level
+    public void store(String basename, int maxTruss) throws IOException {
+        long[] levelCount = new long[maxTruss + 1];
+
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(basename + ".truss"), 1 << 16)) {
+            for (int u = 0; u < n; u++) {
+                if (!isActive(u)) {
+                    continue;
+                }
+                for (int a = arcStart[u]; a < arcStart[u + 1]; a++) {
+                    int v = target[a];
+                    if (v > u && isActive(v)) {
+                        int truss = support.get(a) + 2;
+                        if (truss >= minTruss) {
+                            levelCount[truss]++;
+                            bw.write(u + " " + v + " " + truss + "\n");
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println("truss k\tedges with truss k");
+        for (int k = minTruss; k <= maxTruss; k++) {
+            if (levelCount[k] > 0) {
+                System.out.println(k + "\t" + levelCount[k]);
+            }
+        }
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        long startTime = System.currentTimeMillis();
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java KTrussWG basename [k]");
+            System.exit(1);
+        }
+
+        String basename = args[0];
+        int minTruss = args.length == 2 ? Integer.parseInt(args[1]) : 2;
+        int numThreads = Integer.getInteger("num_threads", Runtime.getRuntime().availableProcessors());
+        System.out.println("Starting " + basename);
+
+        ImmutableGraph graph = ImmutableGraph.load(basename);
+        CompactCoreArray cores = new KCoreWG_M(graph, GraphStatistics.loadOrBuild(basename, graph)).computeKCoreAsync();
+        System.out.println("Cores computed in " + (System.currentTimeMillis() - startTime) / 1000.0 + " sec");
+
+        KTrussWG kTruss = new KTrussWG(graph, cores, minTruss);
+        kTruss.countSupport(numThreads);
+        System.out.println("Support counted in " + (System.currentTimeMillis() - startTime) / 1000.0 + " sec");
+
+        int maxTruss = kTruss.peel();
+        kTruss.store(basename, maxTruss);
+
+        System.out.println(String.format("Edge Count (|E|)\tMax Truss (tmax)\n%d\t%d", kTruss.numEdges, maxTruss));
+        System.out.println(basename + ": Time elapsed (sec) = " + (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+}
@@ -0,0 +1,236 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.LazyIntIterator;
+
+public class SuccessorPrefetcher {
+    private static final int EMPTY = -1;
+    private static final int RETAINED_BUFFER_LIMIT = 1 << 16;
+
+    private final ImmutableGraph[] copies;
+    private final int numDecoders;
+    private final int ringSize;
+
+    // Ring of reusable successor buffers, indexed by frontier position modulo ringSize
+    private final int[] slotDegree;
+    private final int[][] slotBuffer;
+    private final AtomicIntegerArray slotPosition;
+    private volatile int consumed;
+    private volatile Throwable failure;
+
+    // Decoders live across iterations and park between them; round tells them a new frontier is ready
+    private volatile int[] frontier;
+    private volatile int frontierSize;
+    private volatile int round;
+    private volatile boolean stopped;
+    private final AtomicInteger activeDecoders = new AtomicInteger();
+    private Thread[] decoders;
+
+    // Who is parked on what, so the other side only unparks a thread that is actually waiting
+    private final AtomicIntegerArray decoderWaitingFor;
+    private volatile int consumerWaitingFor = EMPTY;
+    private volatile Thread consumer;
+
+    public SuccessorPrefetcher(ImmutableGraph graph, int numDecoders, int ringSize) {
+        this.numDecoders = numDecoders;
+        this.ringSize = ringSize;
+        this.copies = new ImmutableGraph[numDecoders];
+        for (int t = 0; t < numDecoders; t++) {
+            // Each decoder needs its own copy, graph readers are not thread-safe
+            copies[t] = graph.copy();
+        }
+
+        slotDegree = new int[ringSize];
+        slotBuffer = new int[ringSize][];
+        for (int s = 0; s < ringSize; s++) {
+            slotBuffer[s] = new int[16];
+        }
+        slotPosition = new AtomicIntegerArray(ringSize);
+        decoderWaitingFor = new AtomicIntegerArray(numDecoders);
+    }
+
+    public void start(int[] frontier, int frontierSize) {
+        consumer = Thread.currentThread();
+        this.frontier = frontier;
+        this.frontierSize = frontierSize;
+        this.consumed = 0;
+        this.failure = null;
+        for (int s = 0; s < ringSize; s++) {
+            slotPosition.set(s, EMPTY);
+        }
+        for (int t = 0; t < numDecoders; t++) {
+            decoderWaitingFor.set(t, EMPTY);
+        }
+        activeDecoders.set(numDecoders);
+
+        if (decoders == null) {
+            // Daemon threads, so an engine that is simply dropped does not keep the JVM alive
+            decoders = new Thread[numDecoders];
+            for (int t = 0; t < numDecoders; t++) {
+                final int decoder = t;
+                decoders[t] = new Thread(() -> runDecoder(decoder), "successor-decoder-" + t);
+                decoders[t].setDaemon(true);
+            }
+            round++;
+            for (Thread decoder : decoders) {
+                decoder.start();
+            }
+        } else {
+            round++;
+            for (Thread decoder : decoders) {
+                LockSupport.unpark(decoder);
+            }
+        }
+    }
+
+    private void runDecoder(int decoder) {
+        int seenRound = 0;
+        while (true) {
+            while (round == seenRound && !stopped) {
+                LockSupport.park(this);
+            }
+            if (stopped) {
+                return;
+            }
+            seenRound = round;
+
+            try {
+                decodeRound(decoder);
+            } catch (Throwable t) {
+                failure = t;
+                // Wake everyone so nobody stays parked on a round that cannot finish
+                LockSupport.unpark(consumer);
+                for (Thread other : decoders) {
+                    LockSupport.unpark(other);
+                }
+            }
+
+            if (activeDecoders.decrementAndGet() == 0) {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+
+    private void decodeRound(int decoder) {
+        int[] frontier = this.frontier;
+        int frontierSize = this.frontierSize;
+        for (int position = decoder; position < frontierSize && !aborted(); position += numDecoders) {
+            // The slot is free once the position one lap behind has been released
+            while (position - consumed >= ringSize && !aborted()) {
+                decoderWaitingFor.set(decoder, position);
+                if (position - consumed >= ringSize && !aborted()) {
+                    LockSupport.park(this);
+                }
+                decoderWaitingFor.set(decoder, EMPTY);
+            }
+            if (aborted()) {
+                return;
+            }
+
+            decodeInto(copies[decoder], frontier[position], position % ringSize);
+            slotPosition.set(position % ringSize, position);
+            if (consumerWaitingFor == position) {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+
+    private boolean aborted() {
+        return failure != null || stopped;
+    }
+
+    private void decodeInto(ImmutableGraph copy, int node, int slot) {
+        int degree = copy.outdegree(node);
+        int[] buffer = slotBuffer[slot];
+
+        if (buffer.length < degree || (buffer.length > RETAINED_BUFFER_LIMIT && buffer.length > 4 * degree)) {
+            // Do not let every slot keep a hub-sized buffer around
+            buffer = new int[Math.max(degree, 16)];
+            slotBuffer[slot] = buffer;
+        }
+
+        LazyIntIterator successors = copy.successors(node);
+        for (int j = 0; j < degree; j++) {
+            buffer[j] = successors.nextInt();
+        }
+        slotDegree[slot] = degree;
+    }
+
+    // Wait for the successors of the given frontier position and return its slot
+    public int take(int position) {
+        int slot = position % ringSize;
+        while (slotPosition.get(slot) != position) {
+            if (failure != null) {
+                throw new RuntimeException("Successor decoder failed", failure);
+            }
+            consumerWaitingFor = position;
+            if (slotPosition.get(slot) != position && failure == null) {
+                LockSupport.park(this);
+            }
+            consumerWaitingFor = EMPTY;
+        }
+        return slot;
+    }
+
+    public int degree(int slot) {
+        return slotDegree[slot];
+    }
+
+    public int[] successors(int slot) {
+        return slotBuffer[slot];
+    }
+
+    public void release(int position) {
+        consumed = position + 1;
+
+        // Wake the decoder whose next slot this frees, if it is parked on it
+        int next = position + ringSize;
+        int decoder = next % numDecoders;
+        if (decoderWaitingFor.get(decoder) == next) {
+            LockSupport.unpark(decoders[decoder]);
+        }
+    }
+
+    // Wait until every decoder is done with the current frontier and parked for the next one
+    public void finish() throws InterruptedException {
+        while (activeDecoders.get() > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.park(this);
+        }
+        if (failure != null) {
+            throw new RuntimeException("Successor decoder failed", failure);
+        }
+    }
+
+    // Stop the decoder threads so they, the ring and the graph copies can be freed; a later start() starts new ones
+    public void close() {
+        if (decoders == null) {
+            return;
+        }
+
+        stopped = true;
+        for (Thread decoder : decoders) {
+            LockSupport.unpark(decoder);
+        }
+        boolean interrupted = false;
+        for (Thread decoder : decoders) {
+            // Decoders exit promptly once stopped, so wait for them even if interrupted
+            while (decoder.isAlive()) {
+                try {
+                    decoder.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        decoders = null;
+        stopped = false;
+    }
+
+}
@@ -0,0 +1,94 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.BitSet;
+
+public class WarmStart {
+    private final CompactCoreArray bounds;
+    private final BitSet known;
+    private final int slack;
+
+    private WarmStart(CompactCoreArray bounds, BitSet known, int slack) {
+        this.bounds = bounds;
+        this.known = known;
+        this.slack = slack;
+    }
+
+    // Read v:bound[:...] lines, taking the last field: the core of a .cores file or the high bound of a .approx.cores file.
+    // Each inserted edge raises a core number by at most one, so slack should cover the edges added since the snapshot.
+    public static WarmStart load(String path, int numNodes, int slack) throws IOException {
+        CompactCoreArray bounds = new CompactCoreArray(numNodes);
+        BitSet known = new BitSet(numNodes);
+
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                int first = line.indexOf(':');
+                int last = line.lastIndexOf(':');
+                if (first <= 0) {
+                    throw new IOException(path + ":" + lineNumber + ": expected v:bound, got " + line);
+                }
+                try {
+                    int v = Integer.parseInt(line.substring(0, first));
+                    int bound = Integer.parseInt(line.substring(last + 1));
+                    // Vertices that no longer exist are dropped, new ones start from their degree
+                    if (v >= 0 && v < numNodes && bound >= 0) {
+                        if (known.get(v)) {
+                            throw new IOException(path + ":" + lineNumber + ": vertex " + v + " appears twice");
+                        }
+                        bounds.set(v, bound);
+                        known.set(v);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ":" + lineNumber + ": expected v:bound, got " + line);
+                }
+            }
+        }
+
+        return new WarmStart(bounds, known, slack);
+    }
+
+    // Read the file named by -Dwarm_start, or return null when it is not set. -Dwarm_slack is required with it: a
+    // default would silently give cores that are too low once edges have been inserted since the snapshot.
+    public static WarmStart fromProperties(int numNodes) throws IOException {
+        String path = System.getProperty("warm_start");
+        if (path == null) {
+            return null;
+        }
+
+        String slack = System.getProperty("warm_slack");
+        if (slack == null) {
+            throw new IllegalArgumentException("-Dwarm_start needs -Dwarm_slack: the number of edges inserted since "
+                    + path + " was written (0 if none)");
+        }
+        try {
+            int value = Integer.parseInt(slack.trim());
+            if (value < 0) {
+                throw new NumberFormatException();
+            }
+            return load(path, numNodes, value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("-Dwarm_slack must be a non-negative integer, got " + slack);
+        }
+    }
+
+    // Starting estimate of a vertex: its previous bound plus slack, never above its current degree
+    public int seed(int v, int degree) {
+        if (v >= bounds.length() || !known.get(v)) {
+            return degree;
+        }
+        return (int) Math.min(degree, (long) bounds.get(v) + slack);
+    }
+
+    public int knownCount() {
+        return known.cardinality();
+    }
+
+}